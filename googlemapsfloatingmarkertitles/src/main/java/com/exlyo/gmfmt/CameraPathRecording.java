@@ -0,0 +1,177 @@
+package com.exlyo.gmfmt;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sequence of camera positions and view sizes of the frames drawn by a FloatingMarkerTitlesOverlay, recorded with
+ * FloatingMarkerTitlesOverlay.startCameraPathRecording(). The recording can be saved, and replayed later with CameraPathReplayer to
+ * reproduce the exact work done by the overlay during a session, for example on the JVM to detect performance regressions.
+ * <p>
+ * Each frame also keeps the time it was drawn at and the number of new markers checked, since both depend on the device speed during the
+ * session: the replay uses them instead of the clock of the replaying machine.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class CameraPathRecording {
+	private static final int FILE_FORMAT_MAGIC = 0x474d4654;
+	private static final int FILE_FORMAT_VERSION = 2;
+
+	/* Number of checked markers of the frames added without it, or read from a recording of the first version */
+	public static final int UNKNOWN_CHECKED_MARKERS_COUNT = -1;
+
+	private final float screenDensity;
+
+	@NonNull
+	private final List<Frame> frames = new ArrayList<>();
+
+	/**
+	 * @param _screenDensity: the number of pixels per DIP of the screen the map was displayed on
+	 */
+	public CameraPathRecording(final float _screenDensity) {
+		screenDensity = _screenDensity;
+	}
+
+	/**
+	 * Reads a recording previously written with writeTo().
+	 */
+	@NonNull
+	public static CameraPathRecording readFrom(@NonNull final InputStream _inputStream) throws IOException {
+		final DataInputStream in = new DataInputStream(_inputStream);
+		if (in.readInt() != FILE_FORMAT_MAGIC) {
+			throw new IOException("Not a camera path recording");
+		}
+		final int version = in.readInt();
+		if (version != 1 && version != FILE_FORMAT_VERSION) {
+			throw new IOException("Unsupported camera path recording version: " + version);
+		}
+		final CameraPathRecording res = new CameraPathRecording(in.readFloat());
+		final int framesCount = in.readInt();
+		for (int i = 0; i < framesCount; i++) {
+			final long timeMillis = in.readLong();
+			final double latitude = in.readDouble();
+			final double longitude = in.readDouble();
+			final float zoom = in.readFloat();
+			final float tilt = in.readFloat();
+			final float bearing = in.readFloat();
+			final int viewWidth = in.readInt();
+			final int viewHeight = in.readInt();
+			final int checkedMarkersCount = version == 1 ? UNKNOWN_CHECKED_MARKERS_COUNT : in.readInt();
+			res.addFrame(//
+				timeMillis,//
+				new CameraPosition(new LatLng(latitude, longitude), zoom, tilt, bearing),//
+				viewWidth,//
+				viewHeight,//
+				checkedMarkersCount//
+			);
+		}
+		return res;
+	}
+
+	/**
+	 * Writes the recording in a compact binary format, which can be read with readFrom().
+	 */
+	public synchronized void writeTo(@NonNull final OutputStream _outputStream) throws IOException {
+		final DataOutputStream out = new DataOutputStream(_outputStream);
+		out.writeInt(FILE_FORMAT_MAGIC);
+		out.writeInt(FILE_FORMAT_VERSION);
+		out.writeFloat(screenDensity);
+		out.writeInt(frames.size());
+		for (final Frame frame : frames) {
+			out.writeLong(frame.timeMillis);
+			out.writeDouble(frame.cameraPosition.target.latitude);
+			out.writeDouble(frame.cameraPosition.target.longitude);
+			out.writeFloat(frame.cameraPosition.zoom);
+			out.writeFloat(frame.cameraPosition.tilt);
+			out.writeFloat(frame.cameraPosition.bearing);
+			out.writeInt(frame.viewWidth);
+			out.writeInt(frame.viewHeight);
+			out.writeInt(frame.checkedMarkersCount);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Adds a frame at the end of the recording.
+	 *
+	 * @param _timeMillis:     the time the frame was drawn at, in milliseconds
+	 * @param _cameraPosition: the camera position of the map for the frame
+	 * @param _viewWidth:      the width of the map view in pixels
+	 * @param _viewHeight:     the height of the map view in pixels
+	 */
+	public void addFrame(final long _timeMillis, @NonNull final CameraPosition _cameraPosition, final int _viewWidth,
+		final int _viewHeight) {
+		addFrame(_timeMillis, _cameraPosition, _viewWidth, _viewHeight, UNKNOWN_CHECKED_MARKERS_COUNT);
+	}
+
+	/**
+	 * Adds a frame at the end of the recording.
+	 *
+	 * @param _timeMillis:          the time the frame was drawn at, in milliseconds
+	 * @param _cameraPosition:      the camera position of the map for the frame
+	 * @param _viewWidth:           the width of the map view in pixels
+	 * @param _viewHeight:          the height of the map view in pixels
+	 * @param _checkedMarkersCount: the number of new markers checked during the frame, or UNKNOWN_CHECKED_MARKERS_COUNT to check the
+	 *                              number allowed by the overlay settings when replayed
+	 */
+	public synchronized void addFrame(final long _timeMillis, @NonNull final CameraPosition _cameraPosition, final int _viewWidth,
+		final int _viewHeight, final int _checkedMarkersCount) {
+		frames.add(new Frame(_timeMillis, _cameraPosition, _viewWidth, _viewHeight, _checkedMarkersCount));
+	}
+
+	public float getScreenDensity() {
+		return screenDensity;
+	}
+
+	public synchronized int getFramesCount() {
+		return frames.size();
+	}
+
+	public synchronized long getFrameTimeMillis(final int _index) {
+		return frames.get(_index).timeMillis;
+	}
+
+	@NonNull
+	public synchronized CameraPosition getFrameCameraPosition(final int _index) {
+		return frames.get(_index).cameraPosition;
+	}
+
+	public synchronized int getFrameViewWidth(final int _index) {
+		return frames.get(_index).viewWidth;
+	}
+
+	public synchronized int getFrameViewHeight(final int _index) {
+		return frames.get(_index).viewHeight;
+	}
+
+	public synchronized int getFrameCheckedMarkersCount(final int _index) {
+		return frames.get(_index).checkedMarkersCount;
+	}
+
+	private static final class Frame {
+		private final long timeMillis;
+		@NonNull
+		private final CameraPosition cameraPosition;
+		private final int viewWidth;
+		private final int viewHeight;
+		private final int checkedMarkersCount;
+
+		private Frame(final long _timeMillis, @NonNull final CameraPosition _cameraPosition, final int _viewWidth, final int _viewHeight,
+			final int _checkedMarkersCount) {
+			timeMillis = _timeMillis;
+			cameraPosition = _cameraPosition;
+			viewWidth = _viewWidth;
+			viewHeight = _viewHeight;
+			checkedMarkersCount = _checkedMarkersCount;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package com.exlyo.gmfmt;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-frame measurements of a CameraPathRecording replayed with CameraPathReplayer: time spent drawing the frame, memory allocated while
+ * drawing the frame, floating titles displayed, added and removed.
+ * <p>
+ * To fail a build when performance regresses, call assertWithinBaseline() from a unit test.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class CameraPathReplayReport {
+	/* Value of the allocated bytes when they can't be measured on the current runtime */
+	public static final long UNKNOWN_ALLOCATED_BYTES = -1;
+
+	@NonNull
+	private final long[] frameTimeNanos;
+	@NonNull
+	private final long[] frameAllocatedBytes;
+	@NonNull
+	private final int[] frameDisplayedTitlesCount;
+	@NonNull
+	private final int[] frameAddedTitlesCount;
+	@NonNull
+	private final int[] frameRemovedTitlesCount;
+
+	CameraPathReplayReport(final int _framesCount) {
+		frameTimeNanos = new long[_framesCount];
+		frameAllocatedBytes = new long[_framesCount];
+		frameDisplayedTitlesCount = new int[_framesCount];
+		frameAddedTitlesCount = new int[_framesCount];
+		frameRemovedTitlesCount = new int[_framesCount];
+	}
+
+	void setFrame(final int _index, final long _timeNanos, final long _allocatedBytes, @NonNull final FloatingTitlesStats _frameStats) {
+		frameTimeNanos[_index] = _timeNanos;
+		frameAllocatedBytes[_index] = _allocatedBytes;
+		frameDisplayedTitlesCount[_index] = _frameStats.getDisplayedTitlesCount();
+		frameAddedTitlesCount[_index] = _frameStats.getAddedTitlesCount();
+		frameRemovedTitlesCount[_index] = _frameStats.getRemovedTitlesCount();
+	}
+
+	public int getFramesCount() {
+		return frameTimeNanos.length;
+	}
+
+	public long getFrameTimeNanos(final int _index) {
+		return frameTimeNanos[_index];
+	}
+
+	/**
+	 * @return the memory allocated by the drawing thread for the frame, or UNKNOWN_ALLOCATED_BYTES if the runtime can't measure it
+	 */
+	public long getFrameAllocatedBytes(final int _index) {
+		return frameAllocatedBytes[_index];
+	}
+
+	public int getFrameDisplayedTitlesCount(final int _index) {
+		return frameDisplayedTitlesCount[_index];
+	}
+
+	/**
+	 * @return the number of floating titles added and removed during the frame
+	 */
+	public int getFrameChurn(final int _index) {
+		return frameAddedTitlesCount[_index] + frameRemovedTitlesCount[_index];
+	}
+
+	/**
+	 * @param _percentile: between 0 and 100, for example 95 for the time under which 95% of the frames were drawn
+	 */
+	public long getFrameTimePercentileNanos(final float _percentile) {
+		if (frameTimeNanos.length == 0) {
+			return 0;
+		}
+		final long[] sortedFrameTimeNanos = frameTimeNanos.clone();
+		Arrays.sort(sortedFrameTimeNanos);
+		final int index = (int) Math.ceil(Math.max(0F, Math.min(100F, _percentile)) / 100F * sortedFrameTimeNanos.length) - 1;
+		return sortedFrameTimeNanos[Math.max(0, index)];
+	}
+
+	public long getMaxFrameTimeNanos() {
+		return getFrameTimePercentileNanos(100F);
+	}
+
+	/**
+	 * @return the maximum memory allocated for a frame, or UNKNOWN_ALLOCATED_BYTES if the runtime can't measure it
+	 */
+	public long getMaxFrameAllocatedBytes() {
+		long res = UNKNOWN_ALLOCATED_BYTES;
+		for (final long allocatedBytes : frameAllocatedBytes) {
+			res = Math.max(res, allocatedBytes);
+		}
+		return res;
+	}
+
+	public float getAverageChurn() {
+		if (frameTimeNanos.length == 0) {
+			return 0;
+		}
+		long totalChurn = 0;
+		for (int i = 0; i < frameTimeNanos.length; i++) {
+			totalChurn += getFrameChurn(i);
+		}
+		return (float) totalChurn / frameTimeNanos.length;
+	}
+
+	public float getAverageDisplayedTitlesCount() {
+		if (frameTimeNanos.length == 0) {
+			return 0;
+		}
+		long totalDisplayedTitlesCount = 0;
+		for (final int displayedTitlesCount : frameDisplayedTitlesCount) {
+			totalDisplayedTitlesCount += displayedTitlesCount;
+		}
+		return (float) totalDisplayedTitlesCount / frameTimeNanos.length;
+	}
+
+	/**
+	 * Checks the measurements against the limits of a baseline.
+	 *
+	 * @throws AssertionError listing all the limits exceeded, if any
+	 */
+	public void assertWithinBaseline(@NonNull final Baseline _baseline) {
+		final List<String> violations = new ArrayList<>();
+		if (_baseline.maxFrameTimeNanos >= 0) {
+			final long frameTimeNanos = getFrameTimePercentileNanos(_baseline.frameTimePercentile);
+			if (frameTimeNanos > _baseline.maxFrameTimeNanos) {
+				violations.add(//
+					"P" + _baseline.frameTimePercentile + " frame time " + frameTimeNanos + "ns > " + _baseline.maxFrameTimeNanos + "ns"//
+				);
+			}
+		}
+		if (_baseline.maxFrameAllocatedBytes >= 0) {
+			final long maxFrameAllocatedBytes = getMaxFrameAllocatedBytes();
+			if (maxFrameAllocatedBytes > _baseline.maxFrameAllocatedBytes) {
+				violations.add("Max frame allocations " + maxFrameAllocatedBytes + "B > " + _baseline.maxFrameAllocatedBytes + "B");
+			}
+		}
+		if (_baseline.maxAverageChurn >= 0) {
+			final float averageChurn = getAverageChurn();
+			if (averageChurn > _baseline.maxAverageChurn) {
+				violations.add("Average churn " + averageChurn + " > " + _baseline.maxAverageChurn);
+			}
+		}
+		if (_baseline.minAverageDisplayedTitlesCount >= 0) {
+			final float averageDisplayedTitlesCount = getAverageDisplayedTitlesCount();
+			if (averageDisplayedTitlesCount < _baseline.minAverageDisplayedTitlesCount) {
+				violations.add(
+					"Average displayed titles " + averageDisplayedTitlesCount + " < " + _baseline.minAverageDisplayedTitlesCount);
+			}
+		}
+		if (!violations.isEmpty()) {
+			throw new AssertionError("Camera path replay exceeded its baseline: " + violations + "\n" + this);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CameraPathReplayReport{" +//
+			"framesCount=" + getFramesCount() +//
+			", p50FrameTimeNanos=" + getFrameTimePercentileNanos(50F) +//
+			", p95FrameTimeNanos=" + getFrameTimePercentileNanos(95F) +//
+			", maxFrameTimeNanos=" + getMaxFrameTimeNanos() +//
+			", maxFrameAllocatedBytes=" + getMaxFrameAllocatedBytes() +//
+			", averageChurn=" + getAverageChurn() +//
+			", averageDisplayedTitlesCount=" + getAverageDisplayedTitlesCount() +//
+			'}';
+	}
+
+	/**
+	 * Limits to check with assertWithinBaseline(). Limits that are not set are not checked.
+	 */
+	public static final class Baseline {
+		private float frameTimePercentile = 95F;
+		private long maxFrameTimeNanos = -1;
+		private long maxFrameAllocatedBytes = -1;
+		private float maxAverageChurn = -1;
+		private float minAverageDisplayedTitlesCount = -1;
+
+		/**
+		 * @param _percentile:        between 0 and 100, the percentile of the frame times to check
+		 * @param _maxFrameTimeNanos: the maximum time allowed for that percentile
+		 */
+		public Baseline setMaxFrameTime(final float _percentile, final long _maxFrameTimeNanos) {
+			frameTimePercentile = _percentile;
+			maxFrameTimeNanos = _maxFrameTimeNanos;
+			return this;
+		}
+
+		/**
+		 * Only checked on runtimes able to measure the allocations.
+		 */
+		public Baseline setMaxFrameAllocatedBytes(final long _maxFrameAllocatedBytes) {
+			maxFrameAllocatedBytes = _maxFrameAllocatedBytes;
+			return this;
+		}
+
+		public Baseline setMaxAverageChurn(final float _maxAverageChurn) {
+			maxAverageChurn = _maxAverageChurn;
+			return this;
+		}
+
+		public Baseline setMinAverageDisplayedTitlesCount(final float _minAverageDisplayedTitlesCount) {
+			minAverageDisplayedTitlesCount = _minAverageDisplayedTitlesCount;
+			return this;
+		}
+	}
+}
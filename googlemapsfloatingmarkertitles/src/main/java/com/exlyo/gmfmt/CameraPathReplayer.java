@@ -0,0 +1,115 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.Canvas;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.lang.reflect.Method;
+
+/**
+ * Replays a CameraPathRecording against a FloatingMarkerTitlesOverlay, without any GoogleMap: the screen locations of the markers are
+ * computed from the recorded camera positions with the Web Mercator projection (see GMFMTMercatorProjection, which ignores the camera
+ * tilt). Every recorded frame is drawn on the given canvas, and measured into a CameraPathReplayReport.
+ * <p>
+ * The overlay uses the recorded frame times as its clock, and checks the recorded number of new markers in each frame instead of using
+ * its time budget, so the fade animations, the minimum title display time, the marker motions and the placed titles are the same as
+ * during the recorded session, no matter how fast the frames are replayed.
+ * <p>
+ * This is meant to run on the JVM, for example in a Robolectric unit test of the app:
+ * <pre>
+ * final FloatingMarkerTitlesOverlay overlay = new FloatingMarkerTitlesOverlay(context);
+ * // Add the markers of the session to the overlay
+ * final CameraPathRecording recording = CameraPathRecording.readFrom(recordingInputStream);
+ * final Canvas canvas = new Canvas(Bitmap.createBitmap(1080, 1920, Bitmap.Config.ARGB_8888));
+ * final CameraPathReplayReport report = new CameraPathReplayer(overlay, recording).replay(canvas);
+ * report.assertWithinBaseline(new CameraPathReplayReport.Baseline().setMaxFrameTime(95F, 4000000L));
+ * </pre>
+ * The overlay should not have a source set with setSource(), and should only be used by the replay while it runs.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class CameraPathReplayer {
+	@NonNull
+	private final FloatingMarkerTitlesOverlay overlay;
+	@NonNull
+	private final CameraPathRecording recording;
+
+	/* Reflection access to com.sun.management.ThreadMXBean.getThreadAllocatedBytes(), null if unavailable on the current runtime */
+	@Nullable
+	private Object threadMXBean;
+	@Nullable
+	private Method getThreadAllocatedBytesMethod;
+
+	public CameraPathReplayer(@NonNull final FloatingMarkerTitlesOverlay _overlay, @NonNull final CameraPathRecording _recording) {
+		overlay = _overlay;
+		recording = _recording;
+		initAllocationCounter();
+	}
+
+	/**
+	 * Draws all the frames of the recording in order on the canvas, on the calling thread, and measures them.
+	 *
+	 * @param _canvas: the canvas to draw on, for example a Canvas backed by a Bitmap, or a Canvas subclass recording the draw calls
+	 */
+	@NonNull
+	public CameraPathReplayReport replay(@NonNull final Canvas _canvas) {
+		final GMFMTMercatorProjection projection = new GMFMTMercatorProjection(recording.getScreenDensity());
+		final GMFMTGeometryCache geometryCache = new GMFMTGeometryCache(overlay, projection);
+		final int framesCount = recording.getFramesCount();
+		final CameraPathReplayReport res = new CameraPathReplayReport(framesCount);
+		try {
+			for (int i = 0; i < framesCount; i++) {
+				final int viewWidth = recording.getFrameViewWidth(i);
+				final int viewHeight = recording.getFrameViewHeight(i);
+				projection.setCamera(recording.getFrameCameraPosition(i), viewWidth, viewHeight);
+				overlay.setReplayFrame(recording.getFrameTimeMillis(i), recording.getFrameCheckedMarkersCount(i));
+
+				final long allocatedBytesBefore = getCurrentThreadAllocatedBytes();
+				final long timeBefore = System.nanoTime();
+				overlay.drawFrame(_canvas, geometryCache, viewWidth, viewHeight);
+				final long timeAfter = System.nanoTime();
+				final long allocatedBytesAfter = getCurrentThreadAllocatedBytes();
+
+				final long allocatedBytes;
+				if (allocatedBytesBefore < 0 || allocatedBytesAfter < 0) {
+					allocatedBytes = CameraPathReplayReport.UNKNOWN_ALLOCATED_BYTES;
+				} else {
+					allocatedBytes = allocatedBytesAfter - allocatedBytesBefore;
+				}
+				res.setFrame(i, timeAfter - timeBefore, allocatedBytes, overlay.getLastFrameStats());
+			}
+		} finally {
+			overlay.setReplayFrame(FloatingMarkerTitlesOverlay.NO_REPLAY_FRAME_TIME, CameraPathRecording.UNKNOWN_CHECKED_MARKERS_COUNT);
+		}
+		return res;
+	}
+
+	private void initAllocationCounter() {
+		try {
+			final Class<?> managementFactoryClass = Class.forName("java.lang.management.ManagementFactory");
+			final Object bean = managementFactoryClass.getMethod("getThreadMXBean").invoke(null);
+			final Class<?> sunThreadMXBeanClass = Class.forName("com.sun.management.ThreadMXBean");
+			if (!sunThreadMXBeanClass.isInstance(bean)) {
+				return;
+			}
+			getThreadAllocatedBytesMethod = sunThreadMXBeanClass.getMethod("getThreadAllocatedBytes", long.class);
+			threadMXBean = bean;
+		} catch (Throwable t) {
+			// Allocations can't be measured on this runtime (for example on Android), they will be reported as unknown
+			threadMXBean = null;
+			getThreadAllocatedBytesMethod = null;
+		}
+	}
+
+	private long getCurrentThreadAllocatedBytes() {
+		final Object bean = threadMXBean;
+		final Method method = getThreadAllocatedBytesMethod;
+		if (bean == null || method == null) {
+			return CameraPathReplayReport.UNKNOWN_ALLOCATED_BYTES;
+		}
+		try {
+			return (Long) method.invoke(bean, Thread.currentThread().getId());
+		} catch (Throwable t) {
+			return CameraPathReplayReport.UNKNOWN_ALLOCATED_BYTES;
+		}
+	}
+}
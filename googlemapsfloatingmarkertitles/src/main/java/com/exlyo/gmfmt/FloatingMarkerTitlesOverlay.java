@@ -2,7 +2,6 @@ package com.exlyo.gmfmt;
 
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.RectF;
@@ -14,28 +13,65 @@ import android.util.AttributeSet;
 import android.view.View;
 
 import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * This view is meant to be overlayed on top of a map with the exact same dimensions as the map.
  * It will attempt to redraw all the time to keep the marker floating titles up to date with the map below.
+ * <p>
+ * The markers, exclusion zones and settings can be changed from any thread: the changes are queued without blocking and applied at the
+ * start of the next frame, so drawing never waits for another thread, and other threads never wait for a frame to be drawn.
  */
 public class FloatingMarkerTitlesOverlay extends View {
 	/* The fade in animation time for text appearing */
 	private static final long FADE_ANIMATION_TIME = 300;
 
+	/* The size in pixels of the occupancy mask cells */
+	private static final int OCCUPANCY_MASK_CELL_SIZE = 4;
+	/* Value of replayFrameTimeMillis when no frame is being replayed */
+	static final long NO_REPLAY_FRAME_TIME = -1;
+
+	/* Size in pixels of the cells of the index used to find the floating titles at a screen location */
+	private static final int TITLE_HIT_INDEX_CELL_SIZE = 64;
+
+	/* Floating titles are drawn grouped by style, the titles overlapping another title are then moved after the others in z-index order */
+	@NonNull
+	private static final Comparator<MarkerInfo> DRAWING_ORDER_COMPARATOR = new Comparator<MarkerInfo>() {
+		@Override
+		public int compare(final MarkerInfo _markerInfo1, final MarkerInfo _markerInfo2) {
+			return MarkerStyle.compare(_markerInfo1.getStyle(), _markerInfo2.getStyle());
+		}
+	};
+
 	@Nullable
 	private GMFMTGeometryCache geometryCache;
 
+	/* Recording of the camera positions of the frames drawn, if started with startCameraPathRecording() */
+	@Nullable
+	private volatile CameraPathRecording cameraPathRecording;
+
+	/* Changes requested from any thread, applied by the drawing thread at the start of the next frame */
+	@NonNull
+	private final ConcurrentLinkedQueue<PendingChange> pendingChanges = new ConcurrentLinkedQueue<>();
+
 	@NonNull
 	private final Map<Long, MarkerInfo> markerIdToMarkerInfoMap = new HashMap<>();
 
+	/* Tracked markers, indexed by the zoom levels at which their floating titles can be displayed */
 	@NonNull
-	private final List<MarkerInfo> markerInfoList = new ArrayList<>();
+	private final GMFMTZoomBucketIndex markerIndex = new GMFMTZoomBucketIndex();
 
 	/* List of markers that are currently displayed as floating text */
 	@NonNull
@@ -49,12 +85,142 @@ public class FloatingMarkerTitlesOverlay extends View {
 	@NonNull
 	private final Map<MarkerInfo, Long> displayedMarkerIdToAddedTime = new HashMap<>();
 
+	/* Map of displayed MarkerInfo to the anchor used to place their floating text around the marker */
+	@NonNull
+	private final Map<MarkerInfo, MarkerTitleAnchor> displayedMarkerIdToAnchor = new HashMap<>();
+
+	/* Display area and anchor found by computeMarkersToAdd() for the markers to add, to avoid measuring their text twice */
+	@NonNull
+	private final Map<MarkerInfo, RectF> markersToAddScreenRect = new HashMap<>();
+	@NonNull
+	private final Map<MarkerInfo, MarkerTitleAnchor> markersToAddAnchor = new HashMap<>();
+
+	/* Displayed markers close enough to conflict with the marker being checked, kept as a field to avoid allocations every frame */
+	@NonNull
+	private final List<MarkerInfo> nearbyDisplayedMarkers = new ArrayList<>();
+
+	/* Reusable rectangle for the display area of the marker being checked */
+	@NonNull
+	private final RectF candidateScreenRect = new RectF();
+
+	/* Screen space taken by the displayed floating titles and the exclusion zones, to check conflicts of new titles in constant time */
+	@NonNull
+	private final GMFMTOccupancyMask occupancyMask = new GMFMTOccupancyMask(OCCUPANCY_MASK_CELL_SIZE);
+
+	/* Map of exclusion zone ID to the rectangle of the screen where floating titles can't be displayed */
+	@NonNull
+	private final Map<Long, RectF> exclusionZoneIdToScreenRect = new HashMap<>();
+
+	private boolean exclusionZonesChanged;
+
+	/* Tracked markers with an icon footprint, marked in the occupancy mask at their location every frame */
+	@NonNull
+	private final Set<MarkerInfo> iconFootprintMarkers = new HashSet<>();
+
+	/* Largest distance between a marker location and the edge of its icon footprint, among the tracked markers, in DIP */
+	private float maxIconFootprintExtentDIP;
+
+	/* Coordinates around the camera target where a marker icon can be visible in the frame, to skip projecting the other icons, only
+	used if iconsCullingEnabled is true */
+	private boolean iconsCullingEnabled;
+	private double iconsCullingMinLatitude;
+	private double iconsCullingMaxLatitude;
+	private double iconsCullingTargetLongitude;
+	private double iconsCullingLongitudeExtent;
+
+	/* Reusable rectangles for the icon area of the marker being marked or checked */
+	@NonNull
+	private final RectF iconScreenRect = new RectF();
+	@NonNull
+	private final RectF ownIconScreenRect = new RectF();
+
+	/* Screen density, to convert the icon footprints to pixels */
+	private float density;
+
+	/* The floating titles to draw in the current frame in drawing order, with their style, area, text and alpha, kept as fields to
+	avoid allocations every frame */
+	@NonNull
+	private MarkerInfo[] drawnMarkers = new MarkerInfo[0];
+	@NonNull
+	private MarkerStyle[] drawnStyles = new MarkerStyle[0];
+	@NonNull
+	private RectF[] drawnAreas = new RectF[0];
+	@NonNull
+	private String[] drawnTexts = new String[0];
+	@NonNull
+	private int[] drawnAlphas = new int[0];
+	/* Whether each drawn floating title overlaps another one, and its z-index, only set for the overlapping titles */
+	@NonNull
+	private boolean[] drawnOverlapping = new boolean[0];
+	@NonNull
+	private float[] drawnZIndexes = new float[0];
+
+	/* Floating titles drawn in the last frame, published for findTitleAt() and findTitlesIn() calls from any thread */
+	@NonNull
+	private volatile GMFMTTitleHitIndex titleHitIndex = GMFMTTitleHitIndex.EMPTY;
+
+	/* The anchors to try when placing a new floating title, in order of preference */
+	@NonNull
+	private MarkerTitleAnchor[] titleAnchors = {MarkerTitleAnchor.RIGHT};
+
 	float textPaddingToMarker;
 
 	private int maxFloatingTitlesCount;
 
 	private int maxNewMarkersCheckPerFrame;
 
+	/* Time allowed per frame for checking new markers, in nanoseconds, or 0 to check maxNewMarkersCheckPerFrame markers per frame */
+	private long newMarkersCheckTimeBudget;
+
+	/* System.nanoTime() value at the start of the frame being drawn */
+	private long frameStartTime;
+
+	/* Time of the frame being drawn, used as the clock for the marker motions, fade animations and title display times */
+	private long frameTimeMillis;
+
+	/* Frame time and number of new markers to check imposed by CameraPathReplayer for the frame being replayed, instead of the system
+	clock and the settings */
+	private long replayFrameTimeMillis = NO_REPLAY_FRAME_TIME;
+	private int replayCheckedMarkersCount = CameraPathRecording.UNKNOWN_CHECKED_MARKERS_COUNT;
+
+	/* Duration of the interpolation between a marker's coordinates and the coordinates of a position update, or 0 to disable it */
+	private long positionInterpolationTime;
+
+	/* Map of moving MarkerInfo to the interpolation of their coordinates towards the coordinates of their last position update */
+	@NonNull
+	private final Map<MarkerInfo, GMFMTMarkerMotion> markerMotions = new HashMap<>();
+
+	/* Position in the candidates of markerIndex of the next marker to check, so each frame resumes where the previous one stopped */
+	private int nextMarkerToCheckIndex;
+	/* Zoom level of the candidates nextMarkerToCheckIndex refers to */
+	private float candidatesZoom;
+
+	/* Number of threads set with setParallelPlacementThreadsCount() */
+	private int parallelPlacementThreadsCount;
+
+	/* Places the floating titles of new markers on several threads, created on the first frame needing it and released when the overlay
+	stops drawing */
+	@Nullable
+	private GMFMTParallelPlacer parallelPlacer;
+
+	/* Overlap in pixels allowed between displayed floating titles before they are considered in conflict */
+	private float titlesOverlapTolerance;
+
+	/* Time during which a newly displayed floating title can't be removed because of a conflict with a title of equal z-index */
+	private long minTitleDisplayTime;
+
+	/* Counters of the work done for the frame being drawn, and for all the frames drawn since the last reset */
+	@NonNull
+	private final FloatingTitlesStats currentFrameStats = new FloatingTitlesStats();
+	@NonNull
+	private final FloatingTitlesStats totalStats = new FloatingTitlesStats();
+
+	/* Copies of the counters published at the end of every frame, so they can be read from any thread without blocking the drawing */
+	@NonNull
+	private volatile FloatingTitlesStats publishedLastFrameStats = new FloatingTitlesStats();
+	@NonNull
+	private volatile FloatingTitlesStats publishedTotalStats = new FloatingTitlesStats();
+
 	float maxTextWidth;
 
 	float maxTextHeight;
@@ -62,6 +228,22 @@ public class FloatingMarkerTitlesOverlay extends View {
 	TextPaint regularTextPaint;
 	TextPaint boldTextPaint;
 
+	/* Character widths of the text paints, to measure and draw single-line titles without creating a StaticLayout */
+	GMFMTGlyphAdvanceCache regularGlyphAdvanceCache;
+	GMFMTGlyphAdvanceCache boldGlyphAdvanceCache;
+
+	/* Persistent cache of the measured titles, if enabled with setTextMetricsCacheFile() */
+	@Nullable
+	volatile GMFMTTextMetricsDiskCache textMetricsDiskCache;
+
+	/* Whether the overlay is drawn by FloatingMarkerTitlesSurfaceView's render thread, which can't read MarkerInfo objects created from a
+	Marker */
+	private volatile boolean drawnFromRenderThread;
+
+	/* Reusable buffer for the text metrics disk cache reads */
+	@NonNull
+	private final int[] textMetricsBuffer = new int[3];
+
 	public FloatingMarkerTitlesOverlay(final Context context) {
 		super(context);
 		initFMTOverlay();
@@ -78,6 +260,7 @@ public class FloatingMarkerTitlesOverlay extends View {
 	}
 
 	private void initFMTOverlay() {
+		density = getContext().getResources().getDisplayMetrics().density;
 		regularTextPaint = new TextPaint();
 		regularTextPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
 		regularTextPaint.setStrokeWidth(GMFMTUtils.dipToPixels(getContext(), 3));
@@ -85,6 +268,8 @@ public class FloatingMarkerTitlesOverlay extends View {
 		boldTextPaint.setFlags(Paint.ANTI_ALIAS_FLAG);
 		boldTextPaint.setStrokeWidth(GMFMTUtils.dipToPixels(getContext(), 3));
 		boldTextPaint.setTypeface(Typeface.create(Typeface.DEFAULT, Typeface.BOLD));
+		regularGlyphAdvanceCache = new GMFMTGlyphAdvanceCache(regularTextPaint);
+		boldGlyphAdvanceCache = new GMFMTGlyphAdvanceCache(boldTextPaint);
 
 		setTextSizeDIP(14);
 		setTextPaddingToMarkerDIP(8);
@@ -95,28 +280,63 @@ public class FloatingMarkerTitlesOverlay extends View {
 	}
 
 	public void setTextSizeDIP(final int _textSizeDIP) {
-		regularTextPaint.setTextSize(GMFMTUtils.dipToPixels(getContext(), _textSizeDIP));
-		boldTextPaint.setTextSize(GMFMTUtils.dipToPixels(getContext(), _textSizeDIP));
+		final float textSize = GMFMTUtils.dipToPixels(getContext(), _textSizeDIP);
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				regularTextPaint.setTextSize(textSize);
+				boldTextPaint.setTextSize(textSize);
+			}
+		});
 	}
 
 	/**
 	 * Set the spacing between the marker location and the floating text
 	 */
 	public void setTextPaddingToMarkerDIP(final int _textPaddingToMarkerDIP) {
-		textPaddingToMarker = GMFMTUtils.dipToPixels(getContext(), _textPaddingToMarkerDIP);
+		final float padding = GMFMTUtils.dipToPixels(getContext(), _textPaddingToMarkerDIP);
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				textPaddingToMarker = padding;
+			}
+		});
+	}
+
+	/**
+	 * Set the positions to try, in order of preference, when placing a new floating title around its marker. The title is placed with the
+	 * first anchor that doesn't conflict with the displayed titles, and is not displayed if all the anchors conflict. The default value is
+	 * MarkerTitleAnchor.RIGHT only.
+	 * <p>
+	 * The text of a title is measured only once no matter how many anchors are set, so adding anchors is cheap compared to checking more
+	 * markers per frame.
+	 */
+	public void setTitleAnchors(@NonNull final MarkerTitleAnchor... _titleAnchors) {
+		final MarkerTitleAnchor[] anchors;
+		if (_titleAnchors.length == 0) {
+			anchors = new MarkerTitleAnchor[]{MarkerTitleAnchor.RIGHT};
+		} else {
+			anchors = _titleAnchors.clone();
+		}
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				titleAnchors = anchors;
+			}
+		});
 	}
 
 	/**
 	 * Set the maximum number of floating titles displayed at the same time
 	 */
 	public void setMaxFloatingTitlesCount(final int _maxFloatingTitlesCount) {
-		synchronized (markerInfoList) {
-			maxFloatingTitlesCount = _maxFloatingTitlesCount;
-			displayedMarkersList.clear();
-			displayedMarkerIdToScreenRect.clear();
-			displayedMarkerIdToAddedTime.clear();
-		}
-		postInvalidate();
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				maxFloatingTitlesCount = _maxFloatingTitlesCount;
+				clearDisplayedMarkers();
+			}
+		});
 	}
 
 	/**
@@ -127,50 +347,428 @@ public class FloatingMarkerTitlesOverlay extends View {
 	 * marker's title to appear when it should display. Assuming you're having 60 frames per second, it will take about 0.66 seconds.
 	 */
 	public void setSetMaxNewMarkersCheckPerFrame(final int _setMaxNewMarkersCheckPerFrame) {
-		maxNewMarkersCheckPerFrame = _setMaxNewMarkersCheckPerFrame;
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				maxNewMarkersCheckPerFrame = _setMaxNewMarkersCheckPerFrame;
+			}
+		});
+	}
+
+	/**
+	 * Set a time budget for the checks for new markers every display frame, instead of a fixed number of checks. Markers are checked until
+	 * the time spent on the frame so far (including the update of the displayed titles) reaches the budget, and the next frame resumes
+	 * from the next marker. This adapts the number of checks to the device speed: fast devices display new titles faster, and slow
+	 * devices don't drop frames. At least one marker is checked every frame, and each marker at most once per frame.
+	 * <p>
+	 * Setting a budget of 0 goes back to checking the number of markers set with setSetMaxNewMarkersCheckPerFrame(), which is the default.
+	 *
+	 * @param _newMarkersCheckTimeBudgetMillis: the time budget in milliseconds, for example 2
+	 */
+	public void setNewMarkersCheckTimeBudgetMillis(final float _newMarkersCheckTimeBudgetMillis) {
+		final long timeBudget = (long) (Math.max(0F, _newMarkersCheckTimeBudgetMillis) * 1000000L);
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				newMarkersCheckTimeBudget = timeBudget;
+			}
+		});
+	}
+
+	/**
+	 * Set the number of threads measuring and placing the floating titles of new markers, to check more markers per frame on devices with
+	 * many cores. The screen is divided in tiles placed in parallel, and the titles crossing tile borders are checked again on the drawing
+	 * thread, so the displayed titles are the same no matter how the threads are scheduled. The default value is 0, which places the
+	 * titles on the drawing thread only.
+	 * <p>
+	 * In parallel mode, the number of markers checked every frame is the one set with setSetMaxNewMarkersCheckPerFrame(), the time budget
+	 * set with setNewMarkersCheckTimeBudgetMillis() is not used. Setting the value back to 0 or 1 stops the threads. The threads are also
+	 * stopped when the overlay is detached from its window or its source is removed, and started again when it draws again.
+	 *
+	 * @param _threadsCount: the number of threads, for example Runtime.getRuntime().availableProcessors()
+	 */
+	public void setParallelPlacementThreadsCount(final int _threadsCount) {
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				releaseParallelPlacer();
+				parallelPlacementThreadsCount = _threadsCount;
+			}
+		});
+	}
+
+	/**
+	 * Set the overlap allowed between displayed floating titles before one of them gets removed. Titles slightly overlapping because of
+	 * the camera motion will stay displayed instead of disappearing and reappearing. The tolerance only applies between titles with the
+	 * same z-index: a title with a higher z-index still removes any title with a lower z-index it overlaps. This doesn't affect new
+	 * titles, which are never displayed overlapping another title. The default value is 0.
+	 */
+	public void setTitlesOverlapToleranceDIP(final int _titlesOverlapToleranceDIP) {
+		final float tolerance = GMFMTUtils.dipToPixels(getContext(), _titlesOverlapToleranceDIP);
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				titlesOverlapTolerance = tolerance;
+			}
+		});
+	}
+
+	/**
+	 * Set the minimum time a floating title stays displayed before it can be removed because of a conflict with a title of equal z-index.
+	 * Titles can still be removed before that time if they go out of view, or if a title with a higher z-index needs their space. The
+	 * default value is 0.
+	 * <p>
+	 * When two displayed titles with the same z-index are in conflict, the one displayed for the longest time is kept, unless the other
+	 * one has been displayed for less than this minimum time.
+	 */
+	public void setMinTitleDisplayTimeMillis(final long _minTitleDisplayTimeMillis) {
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				minTitleDisplayTime = _minTitleDisplayTimeMillis;
+			}
+		});
+	}
+
+	/**
+	 * @return the counters of the work done to place the floating titles during the last frame drawn, all 0 if the last frame had nothing
+	 * to draw
+	 */
+	@NonNull
+	public FloatingTitlesStats getLastFrameStats() {
+		return new FloatingTitlesStats(publishedLastFrameStats);
+	}
+
+	/**
+	 * @return the counters of the work done to place the floating titles, accumulated since the overlay creation or the last call to
+	 * resetTotalStats()
+	 */
+	@NonNull
+	public FloatingTitlesStats getTotalStats() {
+		return new FloatingTitlesStats(publishedTotalStats);
+	}
+
+	public void resetTotalStats() {
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				totalStats.reset();
+				publishedTotalStats = new FloatingTitlesStats();
+			}
+		});
+	}
+
+	/**
+	 * Enables a persistent cache of the size and truncation of the measured floating titles, stored in a memory-mapped file. Titles
+	 * measured in a previous session are not measured again, which makes floating titles appear faster after the app starts with a lot of
+	 * markers. Titles fitting on a single line are cheap to measure and are not stored in the cache.
+	 * <p>
+	 * The file is opened on a background thread, and the titles are measured normally until it's ready. It keeps a fixed size of 24 bytes
+	 * per entry. Example:
+	 * <code>setTextMetricsCacheFile(new File(context.getCacheDir(), "floating_titles_metrics"), 100000)</code>
+	 *
+	 * @param _file:            the cache file, or null to disable the cache
+	 * @param _maxEntriesCount: the maximum number of measured titles stored in the file
+	 */
+	public void setTextMetricsCacheFile(@Nullable final File _file, final int _maxEntriesCount) {
+		if (_file == null) {
+			textMetricsDiskCache = null;
+			return;
+		}
+		final GMFMTTextMetricsDiskCache diskCache = new GMFMTTextMetricsDiskCache(_file, _maxEntriesCount);
+		diskCache.openInBackground();
+		textMetricsDiskCache = diskCache;
+	}
+
+	/**
+	 * Finds the floating title displayed at a location of the view, for example to open the details of a marker when its title is tapped.
+	 * Can be called from any thread, including while a frame is being drawn: the titles of the last drawn frame are used.
+	 *
+	 * @param _x: horizontal location in the view, in pixels, like MotionEvent.getX()
+	 * @param _y: vertical location in the view, in pixels, like MotionEvent.getY()
+	 * @return the MarkerInfo of the floating title at the location, the one drawn on top if several, or null if none
+	 */
+	@Nullable
+	public MarkerInfo findTitleAt(final float _x, final float _y) {
+		return titleHitIndex.findAt(_x, _y);
+	}
+
+	/**
+	 * Finds the floating titles displayed in an area of the view. Can be called from any thread, including while a frame is being drawn:
+	 * the titles of the last drawn frame are used.
+	 *
+	 * @param _rect: area of the view, in pixels
+	 * @return the MarkerInfo objects of the floating titles intersecting the area
+	 */
+	@NonNull
+	public List<MarkerInfo> findTitlesIn(@NonNull final RectF _rect) {
+		final List<MarkerInfo> res = new ArrayList<>();
+		titleHitIndex.findIn(_rect, res);
+		return res;
 	}
 
 	public void setMaxTextWidthDIP(final int _maxTextWidthDIP) {
-		maxTextWidth = GMFMTUtils.dipToPixels(getContext(), _maxTextWidthDIP);
+		final float width = GMFMTUtils.dipToPixels(getContext(), _maxTextWidthDIP);
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				maxTextWidth = width;
+			}
+		});
 	}
 
 	public void setMaxTextHeightDIP(final int _maxTextHeightDIP) {
-		maxTextHeight = GMFMTUtils.dipToPixels(getContext(), _maxTextHeightDIP);
+		final float height = GMFMTUtils.dipToPixels(getContext(), _maxTextHeightDIP);
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				maxTextHeight = height;
+			}
+		});
+	}
+
+	/**
+	 * Sets a rectangle of the screen where no floating title will be displayed, for example the area of a floating button or a bottom
+	 * sheet displayed on top of the map. Calling this again with the same ID replaces the previous rectangle.
+	 *
+	 * @param _id:         ID to track the exclusion zone for further update or removal
+	 * @param _screenRect: the rectangle in pixels relative to this view, or null to remove the exclusion zone
+	 */
+	public void setExclusionZone(final long _id, @Nullable final RectF _screenRect) {
+		final RectF screenRect = _screenRect == null ? null : new RectF(_screenRect);
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				if (screenRect == null) {
+					exclusionZoneIdToScreenRect.remove(_id);
+				} else {
+					exclusionZoneIdToScreenRect.put(_id, screenRect);
+				}
+				exclusionZonesChanged = true;
+			}
+		});
+	}
+
+	/**
+	 * Removes all the exclusion zones set with setExclusionZone().
+	 */
+	public void clearExclusionZones() {
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				exclusionZoneIdToScreenRect.clear();
+				exclusionZonesChanged = true;
+			}
+		});
 	}
 
 	public void setSource(@Nullable final GoogleMap _googleMap) {
 		if (_googleMap == null) {
 			clearMarkers();
+			postChange(new PendingChange() {
+				@Override
+				public void apply() {
+					releaseParallelPlacer();
+				}
+			});
 			geometryCache = null;
 		} else {
-			geometryCache = new GMFMTGeometryCache(this, _googleMap);
+			geometryCache = new GMFMTGeometryCache(this, new GMFMTGoogleMapProjection(_googleMap));
 		}
 	}
 
+	/**
+	 * Stops the threads of the parallel placer, if any. Only called from the drawing thread, or once it stopped drawing. The placer is
+	 * created again on the next frame if parallel placement is still enabled.
+	 */
+	void releaseParallelPlacer() {
+		if (parallelPlacer != null) {
+			parallelPlacer.shutdown();
+			parallelPlacer = null;
+		}
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		// No more frames are drawn until the overlay is attached again, so the drawing thread doesn't use the placer anymore
+		releaseParallelPlacer();
+		super.onDetachedFromWindow();
+	}
+
+	/**
+	 * Marks the overlay as drawn by FloatingMarkerTitlesSurfaceView's render thread, so MarkerInfo objects created from a Marker are
+	 * rejected by addMarker().
+	 */
+	void setDrawnFromRenderThread(final boolean _drawnFromRenderThread) {
+		drawnFromRenderThread = _drawnFromRenderThread;
+	}
+
+	/**
+	 * Sets the geometry cache used by the drawing thread when the overlay is drawn by another view, instead of setSource().
+	 */
+	void setGeometryCache(@Nullable final GMFMTGeometryCache _geometryCache) {
+		geometryCache = _geometryCache;
+	}
+
+	/**
+	 * Starts recording the camera position and view size of every frame drawn, replacing any recording in progress. The recording can be
+	 * replayed with CameraPathReplayer to reproduce the work done by the overlay, for example to investigate a performance issue.
+	 */
+	public void startCameraPathRecording() {
+		cameraPathRecording = new CameraPathRecording(getContext().getResources().getDisplayMetrics().density);
+	}
+
+	/**
+	 * Stops the recording started with startCameraPathRecording().
+	 *
+	 * @return the recorded frames, or null if no recording was in progress
+	 */
+	@Nullable
+	public CameraPathRecording stopCameraPathRecording() {
+		final CameraPathRecording res = cameraPathRecording;
+		cameraPathRecording = null;
+		return res;
+	}
+
 	/**
 	 * Removes all the tracked markers from the overlay.
 	 */
 	public void clearMarkers() {
-		synchronized (markerInfoList) {
-			markerIdToMarkerInfoMap.clear();
-			markerInfoList.clear();
-			displayedMarkersList.clear();
-			displayedMarkerIdToScreenRect.clear();
-			displayedMarkerIdToAddedTime.clear();
-		}
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				markerIdToMarkerInfoMap.clear();
+				markerIndex.clear();
+				iconFootprintMarkers.clear();
+				maxIconFootprintExtentDIP = 0;
+				markerMotions.clear();
+				clearDisplayedMarkers();
+				titleHitIndex = GMFMTTitleHitIndex.EMPTY;
+				final GMFMTGeometryCache gc = geometryCache;
+				if (gc != null) {
+					gc.clear();
+				}
+			}
+		});
 	}
 
 	/**
 	 * Adds a marker to track with the overlay.
 	 *
-	 * @param _id:         ID to track the marker for further removal
+	 * @param _id:         ID to track the marker for further removal, adding a marker with the ID of a tracked marker replaces it
 	 * @param _markerInfo: MarkerInfo object containing the info of the marker
+	 * @throws IllegalArgumentException if the MarkerInfo was created from a Marker and the overlay is drawn by a
+	 *                                  FloatingMarkerTitlesSurfaceView, since a Marker can only be read on the main thread
 	 */
 	public void addMarker(final long _id, @NonNull final MarkerInfo _markerInfo) {
-		synchronized (markerInfoList) {
-			markerIdToMarkerInfoMap.put(_id, _markerInfo);
-			markerInfoList.add(_markerInfo);
+		if (drawnFromRenderThread && _markerInfo.hasMarker()) {
+			throw new IllegalArgumentException("MarkerInfo objects created from a Marker can't be drawn from a render thread");
 		}
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				final MarkerInfo previousMarkerInfo = markerIdToMarkerInfoMap.put(_id, _markerInfo);
+				if (previousMarkerInfo != null) {
+					forgetMarker(previousMarkerInfo);
+				}
+				markerIndex.add(_markerInfo);
+				final RectF iconFootprint = _markerInfo.getIconFootprintDIP();
+				if (iconFootprint != null) {
+					iconFootprintMarkers.add(_markerInfo);
+					maxIconFootprintExtentDIP = Math.max(maxIconFootprintExtentDIP, Math.max(//
+						Math.max(-iconFootprint.left, iconFootprint.right),//
+						Math.max(-iconFootprint.top, iconFootprint.bottom)//
+					));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Updates the coordinates of several tracked markers at once, for example to track moving vehicles. This is faster than calling
+	 * MarkerInfo.setCoordinates() for each marker: the displayed floating titles are moved without measuring their text again.
+	 * <p>
+	 * MarkerInfo objects created from a Marker are ignored, since they follow the Marker's position: move the Marker itself instead. If a
+	 * position interpolation time is set with setPositionInterpolationMillis(), the markers move smoothly from their current coordinates
+	 * to the new ones.
+	 *
+	 * @param _ids:         IDs of the markers to update, IDs of markers not tracked by the overlay are ignored
+	 * @param _coordinates: new coordinates of the markers, in the same order as _ids
+	 * @throws IllegalArgumentException if _ids and _coordinates don't have the same length
+	 */
+	public void updateMarkerPositions(@NonNull final long[] _ids, @NonNull final LatLng[] _coordinates) {
+		if (_ids.length != _coordinates.length) {
+			throw new IllegalArgumentException(
+				"Got " + _ids.length + " marker IDs for " + _coordinates.length + " coordinates, both arrays should have the same length");
+		}
+		final int count = _ids.length;
+		final long[] ids = Arrays.copyOf(_ids, count);
+		final LatLng[] coordinates = Arrays.copyOf(_coordinates, count);
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				for (int i = 0; i < count; i++) {
+					final MarkerInfo markerInfo = markerIdToMarkerInfoMap.get(ids[i]);
+					if (markerInfo != null && !markerInfo.hasMarker()) {
+						updateMarkerPosition(markerInfo, coordinates[i], frameTimeMillis);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Set the duration of the interpolation between a marker's coordinates and the new coordinates passed to updateMarkerPositions(), to
+	 * make moving markers' floating titles move smoothly on every frame between position updates. The default value is 0, which moves the
+	 * floating titles directly to the new coordinates.
+	 * <p>
+	 * Typically set to the interval between position updates, for example 1000 for markers updated every second.
+	 */
+	public void setPositionInterpolationMillis(final long _positionInterpolationMillis) {
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				positionInterpolationTime = Math.max(0, _positionInterpolationMillis);
+			}
+		});
+	}
+
+	private void updateMarkerPosition(@NonNull final MarkerInfo _markerInfo, @NonNull final LatLng _coordinates, final long _currentTime) {
+		if (positionInterpolationTime > 0) {
+			final LatLng currentCoordinates = getCoordinatesAt(_markerInfo, _currentTime);
+			final GMFMTMarkerMotion motion = markerMotions.get(_markerInfo);
+			if (motion == null) {
+				markerMotions.put(_markerInfo,
+					new GMFMTMarkerMotion(currentCoordinates, _coordinates, _currentTime, positionInterpolationTime));
+			} else {
+				motion.restart(currentCoordinates, _coordinates, _currentTime, positionInterpolationTime);
+			}
+		} else {
+			markerMotions.remove(_markerInfo);
+		}
+		// The MarkerInfo always holds the latest coordinates, the motion only affects where the floating title is drawn until it ends
+		_markerInfo.setCoordinates(_coordinates);
+	}
+
+	/**
+	 * @return the coordinates where a marker's floating title should be placed in the frame being drawn, taking its motion into account
+	 */
+	@NonNull
+	LatLng getFrameCoordinates(@NonNull final MarkerInfo _markerInfo) {
+		return getCoordinatesAt(_markerInfo, frameTimeMillis);
+	}
+
+	@NonNull
+	private LatLng getCoordinatesAt(@NonNull final MarkerInfo _markerInfo, final long _time) {
+		final GMFMTMarkerMotion motion = markerMotions.isEmpty() ? null : markerMotions.get(_markerInfo);
+		if (motion == null) {
+			return _markerInfo.getCoordinates();
+		}
+		if (motion.isFinished(_time)) {
+			markerMotions.remove(_markerInfo);
+			return _markerInfo.getCoordinates();
+		}
+		return motion.getCoordinates(_time);
 	}
 
 	/**
@@ -179,39 +777,277 @@ public class FloatingMarkerTitlesOverlay extends View {
 	 * @param _id: ID of the marker to remove from the overlay
 	 */
 	public void removeMarker(final long _id) {
-		synchronized (markerInfoList) {
-			final MarkerInfo markerInfo = markerIdToMarkerInfoMap.get(_id);
-			if (markerInfo != null) {
-				markerInfoList.remove(markerInfo);
-				displayedMarkersList.remove(markerInfo);
-				displayedMarkerIdToScreenRect.remove(markerInfo);
-				displayedMarkerIdToAddedTime.remove(markerInfo);
+		postChange(new PendingChange() {
+			@Override
+			public void apply() {
+				final MarkerInfo markerInfo = markerIdToMarkerInfoMap.remove(_id);
+				if (markerInfo != null) {
+					forgetMarker(markerInfo);
+				}
 			}
+		});
+	}
+
+	/**
+	 * Makes the next frames use the given time instead of the system clock, and check the given number of new markers instead of the
+	 * number allowed by the settings, so a replayed frame does the same work as the recorded one. Only used by CameraPathReplayer.
+	 *
+	 * @param _frameTimeMillis:     the recorded frame time, or NO_REPLAY_FRAME_TIME to use the system clock again
+	 * @param _checkedMarkersCount: the recorded number of checked markers, or CameraPathRecording.UNKNOWN_CHECKED_MARKERS_COUNT
+	 */
+	void setReplayFrame(final long _frameTimeMillis, final int _checkedMarkersCount) {
+		replayFrameTimeMillis = _frameTimeMillis;
+		replayCheckedMarkersCount = _checkedMarkersCount;
+	}
+
+	/**
+	 * Sets the clock of the frame about to be drawn, before the pending changes are applied since they can depend on it.
+	 */
+	private void startFrame() {
+		frameStartTime = System.nanoTime();
+		frameTimeMillis = replayFrameTimeMillis == NO_REPLAY_FRAME_TIME ? System.currentTimeMillis() : replayFrameTimeMillis;
+	}
+
+	private void postChange(@NonNull final PendingChange _change) {
+		pendingChanges.add(_change);
+		postInvalidate();
+	}
+
+	/**
+	 * Applies the changes requested since the last frame, in the order they were requested. Only called from the drawing thread, which is
+	 * the only thread accessing the markers and display state.
+	 */
+	private void applyPendingChanges() {
+		PendingChange change;
+		while ((change = pendingChanges.poll()) != null) {
+			change.apply();
 		}
 	}
 
+	/**
+	 * Forgets all the state of a marker. Runs in constant time, except for the markers with a displayed floating title, whose number is
+	 * limited by maxFloatingTitlesCount, so removing many markers doesn't make the next frame slow.
+	 */
+	private void forgetMarker(@NonNull final MarkerInfo _markerInfo) {
+		final int index = markerIndex.remove(_markerInfo, candidatesZoom);
+		if (index >= 0 && index < nextMarkerToCheckIndex) {
+			nextMarkerToCheckIndex--;
+		}
+		iconFootprintMarkers.remove(_markerInfo);
+		if (displayedMarkerIdToScreenRect.remove(_markerInfo) != null) {
+			displayedMarkersList.remove(_markerInfo);
+		}
+		displayedMarkerIdToAddedTime.remove(_markerInfo);
+		displayedMarkerIdToAnchor.remove(_markerInfo);
+		markerMotions.remove(_markerInfo);
+		final GMFMTGeometryCache gc = geometryCache;
+		if (gc != null) {
+			gc.forget(_markerInfo);
+		}
+	}
+
+	private void clearDisplayedMarkers() {
+		displayedMarkersList.clear();
+		displayedMarkerIdToScreenRect.clear();
+		displayedMarkerIdToAddedTime.clear();
+		displayedMarkerIdToAnchor.clear();
+	}
+
 	@Override
 	public void draw(final Canvas _canvas) {
 		super.draw(_canvas);
-		if (maxFloatingTitlesCount == 0) {
-			return;
-		}
 		final GMFMTGeometryCache gc = geometryCache;
 		if (_canvas == null || gc == null) {
+			skipFrame();
 			return;
 		}
-		synchronized (markerInfoList) {
-			drawFloatingMarkerTitles(_canvas, gc);
+		if (drawFrame(_canvas, gc, GMFMTUtils.getCanvasWidth(_canvas), GMFMTUtils.getCanvasHeight(_canvas))) {
+			postInvalidate();
 		}
-		postInvalidate();
 	}
 
-	private void drawFloatingMarkerTitles(@NonNull final Canvas _canvas, @NonNull final GMFMTGeometryCache _geometryCache) {
-		_geometryCache.prepareForNewFrame(_canvas);
+	/**
+	 * Applies the pending changes for a frame where nothing can be drawn, for example when the camera is unknown or the view has no size,
+	 * so the changes don't pile up and nothing from the previous frames stays published.
+	 */
+	void skipFrame() {
+		startFrame();
+		applyPendingChanges();
+		clearPublishedFrame();
+	}
+
+	/**
+	 * Applies the pending changes and draws the floating titles for one frame, using the given geometry cache for the screen locations.
+	 *
+	 * @return false if there was nothing to draw because the floating titles are disabled
+	 */
+	boolean drawFrame(@NonNull final Canvas _canvas, @NonNull final GMFMTGeometryCache _geometryCache, final int _viewWidth,
+		final int _viewHeight) {
+		startFrame();
+		applyPendingChanges();
+		if (maxFloatingTitlesCount == 0) {
+			clearPublishedFrame();
+			return false;
+		}
+		drawFloatingMarkerTitles(_canvas, _geometryCache, _viewWidth, _viewHeight);
+		return true;
+	}
+
+	/**
+	 * Publishes an empty frame: no floating title can be found on the screen, and the last frame stats are all 0.
+	 */
+	private void clearPublishedFrame() {
+		titleHitIndex = GMFMTTitleHitIndex.EMPTY;
+		publishedLastFrameStats = new FloatingTitlesStats();
+	}
+
+	private void drawFloatingMarkerTitles(@NonNull final Canvas _canvas, @NonNull final GMFMTGeometryCache _geometryCache,
+		final int _viewWidth, final int _viewHeight) {
+		currentFrameStats.reset();
+		_geometryCache.prepareForNewFrame(_viewWidth, _viewHeight);
+		updateOccupancyMaskExclusions(_geometryCache);
+		updateOccupancyMaskIcons(_geometryCache);
 		updateCurrentlyDisplayedMarkers(_geometryCache);
-		for (final MarkerInfo mi : displayedMarkersList) {
-			drawMarkerFloatingTitle(_canvas, mi);
+		final int drawnTitlesCount = drawFloatingTitlesByStyle(_canvas);
+		if (drawnTitlesCount == 0) {
+			titleHitIndex = GMFMTTitleHitIndex.EMPTY;
+		} else {
+			// Only copies the drawn titles, the index is built if the snapshot is queried
+			titleHitIndex = new GMFMTTitleHitIndex(//
+				drawnMarkers,//
+				drawnAreas,//
+				drawnTitlesCount,//
+				_viewWidth,//
+				_viewHeight,//
+				TITLE_HIT_INDEX_CELL_SIZE//
+			);
+		}
+		final CameraPathRecording recording = cameraPathRecording;
+		if (recording != null) {
+			recording.addFrame(//
+				frameTimeMillis,//
+				_geometryCache.getCameraPosition(),//
+				_viewWidth,//
+				_viewHeight,//
+				currentFrameStats.checkedMarkersCount//
+			);
+		}
+		currentFrameStats.framesCount = 1;
+		currentFrameStats.displayedTitlesCount = displayedMarkersList.size();
+		totalStats.add(currentFrameStats);
+		publishedLastFrameStats = new FloatingTitlesStats(currentFrameStats);
+		publishedTotalStats = new FloatingTitlesStats(totalStats);
+	}
+
+	private void updateOccupancyMaskExclusions(@NonNull final GMFMTGeometryCache _geometryCache) {
+		final boolean screenSizeChanged = occupancyMask.setScreenSize(_geometryCache.getViewWidth(), _geometryCache.getViewHeight());
+		if (!screenSizeChanged && !exclusionZonesChanged) {
+			return;
+		}
+		occupancyMask.clearExclusions();
+		for (final RectF rect : exclusionZoneIdToScreenRect.values()) {
+			occupancyMask.markExclusion(rect);
 		}
+		exclusionZonesChanged = false;
+	}
+
+	/**
+	 * Marks the icon footprints in the occupancy mask at the markers' location for the frame, since they move with the camera. Like the
+	 * floating titles, icons are only considered for markers in their zoom range, and only the icons close enough to the camera target
+	 * to be visible are projected on the screen.
+	 */
+	private void updateOccupancyMaskIcons(@NonNull final GMFMTGeometryCache _geometryCache) {
+		occupancyMask.clearIcons();
+		if (iconFootprintMarkers.isEmpty()) {
+			return;
+		}
+		final float zoom = _geometryCache.getZoom();
+		updateIconsCullingBounds(_geometryCache);
+		for (final MarkerInfo mi : iconFootprintMarkers) {
+			if (!mi.isVisible() || !markerIndex.isInZoomRange(mi, zoom)) {
+				continue;
+			}
+			if (iconsCullingEnabled && !isInIconsCullingBounds(getFrameCoordinates(mi))) {
+				continue;
+			}
+			if (computeIconScreenRect(mi, _geometryCache.getScreenLocation(mi), iconScreenRect)) {
+				occupancyMask.markIcon(iconScreenRect);
+			}
+		}
+	}
+
+	/**
+	 * Computes the coordinates where a marker icon can be visible in the frame, from the camera position only, without projecting any
+	 * location. Culling is disabled when the camera is tilted, since the visible area then can't be bounded that simply.
+	 */
+	private void updateIconsCullingBounds(@NonNull final GMFMTGeometryCache _geometryCache) {
+		final CameraPosition cameraPosition = _geometryCache.getCameraPosition();
+		iconsCullingEnabled = false;
+		if (cameraPosition == null || cameraPosition.tilt != 0) {
+			return;
+		}
+		// Size of the world in pixels, the whole world being a 256x256 DIP square at zoom level 0 with the Web Mercator projection
+		final double worldSize = 256D * density * Math.pow(2, cameraPosition.zoom);
+		// Any visible location is within the view diagonal of the camera target, whatever the bearing and the map padding
+		final double reach = Math.hypot(_geometryCache.getViewWidth(), _geometryCache.getViewHeight())//
+			+ maxIconFootprintExtentDIP * density;
+		final double longitudeExtent = reach / worldSize * 360D;
+		if (longitudeExtent >= 180D) {
+			return;
+		}
+		final double sinLatitude = Math.max(-0.9999D, Math.min(0.9999D, Math.sin(Math.toRadians(cameraPosition.target.latitude))));
+		final double targetY = 0.5D - Math.log((1D + sinLatitude) / (1D - sinLatitude)) / (4D * Math.PI);
+		final double minY = targetY - reach / worldSize;
+		final double maxY = targetY + reach / worldSize;
+		iconsCullingMaxLatitude = minY <= 0D ? 90D : Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1D - 2D * minY))));
+		iconsCullingMinLatitude = maxY >= 1D ? -90D : Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1D - 2D * maxY))));
+		iconsCullingTargetLongitude = cameraPosition.target.longitude;
+		iconsCullingLongitudeExtent = longitudeExtent;
+		iconsCullingEnabled = true;
+	}
+
+	private boolean isInIconsCullingBounds(@NonNull final LatLng _coordinates) {
+		if (_coordinates.latitude < iconsCullingMinLatitude || _coordinates.latitude > iconsCullingMaxLatitude) {
+			return false;
+		}
+		// Taking the shortest way around the world, the same way the map wraps horizontally
+		double longitudeDelta = Math.abs(_coordinates.longitude - iconsCullingTargetLongitude) % 360D;
+		if (longitudeDelta > 180D) {
+			longitudeDelta = 360D - longitudeDelta;
+		}
+		return longitudeDelta <= iconsCullingLongitudeExtent;
+	}
+
+	/**
+	 * @param _screenLocation: screen location of the marker
+	 * @param _res:            set to the screen area of the marker's icon
+	 * @return false if the marker has no icon footprint, in which case _res is not set
+	 */
+	private boolean computeIconScreenRect(@NonNull final MarkerInfo _markerInfo, @NonNull final Point _screenLocation,
+		@NonNull final RectF _res) {
+		final RectF footprint = _markerInfo.getIconFootprintDIP();
+		if (footprint == null) {
+			return false;
+		}
+		_res.set(//
+			_screenLocation.x + footprint.left * density,//
+			_screenLocation.y + footprint.top * density,//
+			_screenLocation.x + footprint.right * density,//
+			_screenLocation.y + footprint.bottom * density//
+		);
+		return true;
+	}
+
+	/**
+	 * @return true if the floating title area covers the icon of another marker than _markerInfo
+	 */
+	private boolean isCoveringOtherMarkerIcons(@NonNull final MarkerInfo _markerInfo, @NonNull final Point _screenLocation,
+		@NonNull final RectF _area) {
+		if (iconFootprintMarkers.isEmpty()) {
+			return false;
+		}
+		final boolean hasOwnIcon = computeIconScreenRect(_markerInfo, _screenLocation, ownIconScreenRect);
+		return occupancyMask.isCoveringIcons(_area, hasOwnIcon ? ownIconScreenRect : null);
 	}
 
 	private void updateCurrentlyDisplayedMarkers(@NonNull final GMFMTGeometryCache _geometryCache) {
@@ -224,17 +1060,28 @@ public class FloatingMarkerTitlesOverlay extends View {
 		// Determine the minimum z-index among the visible floating marker titles
 		float minVisibleZIndex = 0F;
 
-		// Update the displayed marker titles display area rectangles
-		for (final MarkerInfo mi : displayedMarkersList) {
+		// Update the displayed marker titles display area rectangles, and rebuild the occupancy mask from them
+		occupancyMask.clearTitles();
+		for (int i = displayedMarkersList.size() - 1; i >= 0; i--) {
+			final MarkerInfo mi = displayedMarkersList.get(i);
 			final RectF currentArea = displayedMarkerIdToScreenRect.get(mi);
 			//We only recompute the location, because the text size is still correct and expensive to calculate
-			final Point newLocation = _geometryCache.getScreenLocation(mi.getCoordinates());
-			currentArea.set(//
-				(float) newLocation.x + textPaddingToMarker,//
-				(float) newLocation.y - currentArea.height() / 2,//
-				(float) newLocation.x + textPaddingToMarker + currentArea.width(),//
-				(float) newLocation.y + currentArea.height() / 2//
+			final Point newLocation = _geometryCache.getScreenLocation(mi);
+			displayedMarkerIdToAnchor.get(mi).computeRect(//
+				currentArea,//
+				newLocation.x,//
+				newLocation.y,//
+				currentArea.width(),//
+				currentArea.height(),//
+				textPaddingToMarker//
 			);
+			if (occupancyMask.isExcluded(currentArea) || isCoveringOtherMarkerIcons(mi, newLocation, currentArea)) {
+				// The marker floating title moved into an exclusion zone or over another marker's icon, we remove it
+				displayedMarkersList.remove(i);
+				removeDisplayedMarkerTitle(mi);
+				continue;
+			}
+			occupancyMask.markTitle(currentArea);
 			if (minVisibleZIndex > mi.getZIndex()) {
 				minVisibleZIndex = mi.getZIndex();
 			}
@@ -245,19 +1092,22 @@ public class FloatingMarkerTitlesOverlay extends View {
 
 		// Fill the displayed markers list with markers to check
 		for (final MarkerInfo mi : markersToAdd) {
-			final RectF displayAreaRect = _geometryCache.computeDisplayAreaRect(mi);
 			displayedMarkersList.add(mi);
-			displayedMarkerIdToScreenRect.put(mi, displayAreaRect);
-			displayedMarkerIdToAddedTime.put(mi, System.currentTimeMillis());
+			displayedMarkerIdToScreenRect.put(mi, markersToAddScreenRect.get(mi));
+			displayedMarkerIdToAddedTime.put(mi, frameTimeMillis);
+			displayedMarkerIdToAnchor.put(mi, markersToAddAnchor.get(mi));
+			currentFrameStats.addedTitlesCount++;
 		}
+		markersToAddScreenRect.clear();
+		markersToAddAnchor.clear();
 	}
 
 	private void removeOutOfViewMarkerTitles(@NonNull final GMFMTGeometryCache _geometryCache) {
 		for (int i = displayedMarkersList.size() - 1; i >= 0; i--) {
 			final MarkerInfo mi = displayedMarkersList.get(i);
 			boolean needToRemove = false;
-			if (mi.isVisible()) {
-				if (!_geometryCache.isInScreenBounds(mi.getCoordinates())) {
+			if (mi.isVisible() && markerIndex.isInZoomRange(mi, _geometryCache.getZoom())) {
+				if (!_geometryCache.isInScreenBounds(mi)) {
 					needToRemove = true;
 				}
 			} else {
@@ -267,13 +1117,23 @@ public class FloatingMarkerTitlesOverlay extends View {
 				continue;
 			}
 			displayedMarkersList.remove(i);
-			displayedMarkerIdToScreenRect.remove(mi);
-			displayedMarkerIdToAddedTime.remove(mi);
+			removeDisplayedMarkerTitle(mi);
 		}
 	}
 
+	/**
+	 * Forgets the display state of a marker's floating title, once it's been removed from displayedMarkersList.
+	 */
+	private void removeDisplayedMarkerTitle(@NonNull final MarkerInfo _markerInfo) {
+		displayedMarkerIdToScreenRect.remove(_markerInfo);
+		displayedMarkerIdToAddedTime.remove(_markerInfo);
+		displayedMarkerIdToAnchor.remove(_markerInfo);
+		currentFrameStats.removedTitlesCount++;
+	}
+
 	private void removeConflictedMarkerTitles() {
 		final List<MarkerInfo> markerInfoToRemove = new ArrayList<>();
+		final long currentTime = frameTimeMillis;
 
 		float minZIndex = 0;
 		for (final MarkerInfo mi : displayedMarkerIdToScreenRect.keySet()) {
@@ -290,17 +1150,21 @@ public class FloatingMarkerTitlesOverlay extends View {
 				if (markerInfoToRemove.contains(mi2)) {
 					continue;
 				}
-				final boolean displayConflict;
 				final RectF miDisplayArea = displayedMarkerIdToScreenRect.get(mi);
 				final RectF mi2DisplayArea = displayedMarkerIdToScreenRect.get(mi2);
-				displayConflict = RectF.intersects(miDisplayArea, mi2DisplayArea);
-				if (displayConflict) {
-					if (mi.getZIndex() > mi2.getZIndex()) {
-						markerInfoToRemove.add(mi2);
-					} else {
-						markerInfoToRemove.add(mi);
-					}
-
+				if (!areDisplayedTitlesInConflict(mi, miDisplayArea, mi2, mi2DisplayArea)) {
+					continue;
+				}
+				final MarkerInfo evictedMarkerInfo;
+				if (mi.getZIndex() > mi2.getZIndex()) {
+					evictedMarkerInfo = mi2;
+				} else if (mi.getZIndex() < mi2.getZIndex()) {
+					evictedMarkerInfo = mi;
+				} else {
+					evictedMarkerInfo = chooseEvictedAmongEqualPriorityTitles(mi, mi2, currentTime);
+				}
+				if (evictedMarkerInfo != null) {
+					markerInfoToRemove.add(evictedMarkerInfo);
 					break;
 				}
 			}
@@ -318,14 +1182,59 @@ public class FloatingMarkerTitlesOverlay extends View {
 
 		for (final MarkerInfo mi : markerInfoToRemove) {
 			displayedMarkersList.remove(mi);
-			displayedMarkerIdToScreenRect.remove(mi);
-			displayedMarkerIdToAddedTime.remove(mi);
+			removeDisplayedMarkerTitle(mi);
+		}
+	}
+
+	/**
+	 * Displayed floating titles with the same z-index are only considered in conflict if they overlap by more than titlesOverlapTolerance
+	 * on both axes, so titles slightly overlapping because of the camera motion are not removed. A title with a higher z-index still
+	 * removes any title with a lower z-index it overlaps.
+	 */
+	private boolean areDisplayedTitlesInConflict(@NonNull final MarkerInfo _markerInfo1, @NonNull final RectF _area1,
+		@NonNull final MarkerInfo _markerInfo2, @NonNull final RectF _area2) {
+		if (_markerInfo1.getZIndex() != _markerInfo2.getZIndex()) {
+			return RectF.intersects(_area1, _area2);
 		}
+		final float overlapWidth = Math.min(_area1.right, _area2.right) - Math.max(_area1.left, _area2.left);
+		final float overlapHeight = Math.min(_area1.bottom, _area2.bottom) - Math.max(_area1.top, _area2.top);
+		return overlapWidth > titlesOverlapTolerance && overlapHeight > titlesOverlapTolerance;
 	}
 
 	/**
-	 * Determines the list of markers to add next. Since the number of markers we will check is limited by maxNewMarkersCheckPerFrame, the
-	 * list rotation is essential to ensure all the markers in the list are checked eventually (over several draw() calls).
+	 * Picks which of two conflicting displayed floating titles with the same z-index should be removed. Titles displayed for less than
+	 * minTitleDisplayTime are protected, otherwise the most recently displayed title is removed, so the incumbent keeps its place.
+	 *
+	 * @return the marker whose floating title should be removed, or null if both are protected and should stay for now
+	 */
+	@Nullable
+	private MarkerInfo chooseEvictedAmongEqualPriorityTitles(@NonNull final MarkerInfo _markerInfo1, @NonNull final MarkerInfo _markerInfo2,
+		final long _currentTime) {
+		final long displayTime1 = _currentTime - getAddedTime(_markerInfo1, _currentTime);
+		final long displayTime2 = _currentTime - getAddedTime(_markerInfo2, _currentTime);
+		final boolean protected1 = displayTime1 < minTitleDisplayTime;
+		final boolean protected2 = displayTime2 < minTitleDisplayTime;
+		if (protected1 && protected2) {
+			return null;
+		}
+		if (protected1) {
+			return _markerInfo2;
+		}
+		if (protected2) {
+			return _markerInfo1;
+		}
+		return displayTime1 >= displayTime2 ? _markerInfo2 : _markerInfo1;
+	}
+
+	private long getAddedTime(@NonNull final MarkerInfo _markerInfo, final long _defaultValue) {
+		final Long addedTime = displayedMarkerIdToAddedTime.get(_markerInfo);
+		return addedTime == null ? _defaultValue : addedTime;
+	}
+
+	/**
+	 * Determines the list of markers to add next. Since the number of markers we will check is limited by maxNewMarkersCheckPerFrame or
+	 * newMarkersCheckTimeBudget, resuming from nextMarkerToCheckIndex is essential to ensure all the markers in the list are checked
+	 * eventually (over several draw() calls). Only the markers that can be displayed at the current zoom level are checked.
 	 * <p>
 	 * The created list will attempt to respect maxFloatingTitlesCount. However if some markers have a higher z-index than _minZIndex, they
 	 * will still be added, which will make the limit go over for the current frame.
@@ -334,29 +1243,14 @@ public class FloatingMarkerTitlesOverlay extends View {
 	@NonNull
 	private List<MarkerInfo> computeMarkersToAdd(@NonNull final GMFMTGeometryCache _geometryCache, final float _minZIndex) {
 		final ArrayList<MarkerInfo> markersToAdd = new ArrayList<>();
-
-		// Adding the maximum number of markers to markersToAdd
-		final int numberOfMarkersToCheck = Math.min(markerInfoList.size(), maxNewMarkersCheckPerFrame);
-		for (int i = 0; i < numberOfMarkersToCheck; i++) {
-			// List rotation, we will take the first element of the list and put it to the end, numberOfMarkersToCheck times
-			final MarkerInfo mi = markerInfoList.remove(0);
-			markerInfoList.add(mi);
-
-			if (!mi.isVisible()) {
-				// If the marker is not visible, we don't add it
-				continue;
-			}
-			if (displayedMarkersList.contains(mi)) {
-				// If the marker is already in the displayed markers, we don't add it
-				continue;
-			}
-
-			if (isMarkerTitleInConflictWithDisplay(_geometryCache, mi)) {
-				// If the marker is in conflict with display, we don't add it
-				continue;
-			}
-
-			markersToAdd.add(mi);
+		if (parallelPlacer == null && parallelPlacementThreadsCount > 1) {
+			parallelPlacer = new GMFMTParallelPlacer(this, occupancyMask, parallelPlacementThreadsCount);
+		}
+		final GMFMTParallelPlacer placer = parallelPlacer;
+		if (placer == null) {
+			addMarkersWithoutConflict(_geometryCache, _minZIndex, markersToAdd);
+		} else {
+			addMarkersWithoutConflictInParallel(_geometryCache, _minZIndex, placer, markersToAdd);
 		}
 
 		// While we're above display limit count, we remove markers without a stricly higher z-index than _minZIndex
@@ -364,7 +1258,7 @@ public class FloatingMarkerTitlesOverlay extends View {
 
 		for (int i = markersToAdd.size() - 1; i >= 0 && remainingDisplaySlots < markersToAdd.size(); i--) {
 			final MarkerInfo mi = markersToAdd.get(i);
-			if (!_geometryCache.isInScreenBounds(mi.getCoordinates())) {
+			if (!_geometryCache.isInScreenBounds(mi)) {
 				// If the marker is not visible, we remove it
 				markersToAdd.remove(i);
 			}
@@ -379,11 +1273,232 @@ public class FloatingMarkerTitlesOverlay extends View {
 		return markersToAdd;
 	}
 
-	private boolean isMarkerTitleInConflictWithDisplay(final GMFMTGeometryCache _geometryCache, final MarkerInfo _markerInfo) {
-		final RectF displayAreaRect = _geometryCache.computeDisplayAreaRect(_markerInfo);
-		for (final MarkerInfo mi2 : displayedMarkerIdToScreenRect.keySet()) {
+	/**
+	 * Adds to _markersToAdd the markers whose floating title can be displayed without conflict, checking the maximum number of markers
+	 * for the frame.
+	 */
+	private void addMarkersWithoutConflict(@NonNull final GMFMTGeometryCache _geometryCache, final float _minZIndex,
+		@NonNull final List<MarkerInfo> _markersToAdd) {
+		// Adding the maximum number of markers to markersToAdd, checking each marker at most once
+		final float zoom = _geometryCache.getZoom();
+		candidatesZoom = zoom;
+		final int markersCount = markerIndex.getCandidatesCount(zoom);
+		final long checkDeadline = frameStartTime + newMarkersCheckTimeBudget;
+		for (int i = 0; i < markersCount; i++) {
+			if (newMarkersCheckTimeBudget > 0 && replayCheckedMarkersCount == CameraPathRecording.UNKNOWN_CHECKED_MARKERS_COUNT) {
+				if (i > 0 && System.nanoTime() >= checkDeadline) {
+					break;
+				}
+			} else if (i >= getMaxNewMarkersCheckCount()) {
+				break;
+			}
+			final MarkerInfo mi = getNextMarkerToCheck(zoom, markersCount);
+			if (mi == null) {
+				continue;
+			}
+
+			final MarkerTitleAnchor anchor = findAnchorWithoutConflict(_geometryCache, mi, _minZIndex, candidateScreenRect);
+			if (anchor == null) {
+				// If the marker is in conflict with display for all the anchors, we don't add it
+				continue;
+			}
+
+			// Taking the space right away so the next markers checked in this frame don't overlap with this one
+			occupancyMask.markTitle(candidateScreenRect);
+
+			_markersToAdd.add(mi);
+			markersToAddScreenRect.put(mi, new RectF(candidateScreenRect));
+			markersToAddAnchor.put(mi, anchor);
+		}
+	}
+
+	/**
+	 * Same as addMarkersWithoutConflict(), measuring and placing the floating titles on the threads of the parallel placer. The markers to
+	 * check are gathered and projected on the drawing thread, then placed in parallel by screen tiles. The placed titles are added in two
+	 * steps: first the titles inside their tile, which can't be in conflict with each other, then the titles crossing a tile border,
+	 * checked again in order against all the titles added so far.
+	 */
+	private void addMarkersWithoutConflictInParallel(@NonNull final GMFMTGeometryCache _geometryCache, final float _minZIndex,
+		@NonNull final GMFMTParallelPlacer _placer, @NonNull final List<MarkerInfo> _markersToAdd) {
+		final float zoom = _geometryCache.getZoom();
+		candidatesZoom = zoom;
+		final int markersCount = markerIndex.getCandidatesCount(zoom);
+		_placer.clearCandidates();
+		final int maxNewMarkersCheckCount = getMaxNewMarkersCheckCount();
+		for (int i = 0; i < markersCount && i < maxNewMarkersCheckCount; i++) {
+			final MarkerInfo mi = getNextMarkerToCheck(zoom, markersCount);
+			if (mi != null) {
+				final Point screenLocation = _geometryCache.getScreenLocation(mi);
+				final boolean hasIcon = computeIconScreenRect(mi, screenLocation, iconScreenRect);
+				_placer.addCandidate(mi, screenLocation, hasIcon ? iconScreenRect : null);
+			}
+		}
+		final int candidatesCount = _placer.getCandidatesCount();
+		if (candidatesCount == 0) {
+			return;
+		}
+		_placer.placeCandidates(titleAnchors, textPaddingToMarker, _minZIndex, displayedMarkerIdToScreenRect);
+		currentFrameStats.measuredTitlesCount += candidatesCount;
+
+		// Adding the titles inside their tile
+		for (int i = 0; i < candidatesCount; i++) {
+			final MarkerTitleAnchor anchor = _placer.getPlacedAnchor(i);
+			if (anchor == null || _placer.isPlacedAcrossTileBorder(i)) {
+				continue;
+			}
+			final MarkerInfo mi = _placer.getCandidate(i);
+			final RectF area = _placer.getPlacedArea(i);
+			occupancyMask.markTitle(area);
+			markersToAddScreenRect.put(mi, new RectF(area));
+			markersToAddAnchor.put(mi, anchor);
+		}
+
+		// Checking again the titles crossing a tile border, since titles of other tiles might be in conflict with them
+		for (int i = 0; i < candidatesCount; i++) {
+			if (_placer.getPlacedAnchor(i) == null || !_placer.isPlacedAcrossTileBorder(i)) {
+				continue;
+			}
+			final MarkerInfo mi = _placer.getCandidate(i);
+			final MarkerTitleAnchor anchor = findAnchorWithoutConflict(//
+				mi,//
+				_geometryCache.getScreenLocation(mi),//
+				_placer.getTextSize(i),//
+				_minZIndex,//
+				candidateScreenRect//
+			);
+			if (anchor == null) {
+				continue;
+			}
+			occupancyMask.markTitle(candidateScreenRect);
+			markersToAddScreenRect.put(mi, new RectF(candidateScreenRect));
+			markersToAddAnchor.put(mi, anchor);
+		}
+
+		// Keeping the order of check, like addMarkersWithoutConflict(), since the markers checked last are the first ones trimmed
+		for (int i = 0; i < candidatesCount; i++) {
+			final MarkerInfo mi = _placer.getCandidate(i);
+			if (markersToAddAnchor.containsKey(mi)) {
+				_markersToAdd.add(mi);
+			}
+		}
+		_placer.clearCandidates();
+	}
+
+	/**
+	 * @return the number of new markers to check in the frame when not using the time budget
+	 */
+	private int getMaxNewMarkersCheckCount() {
+		if (replayCheckedMarkersCount == CameraPathRecording.UNKNOWN_CHECKED_MARKERS_COUNT) {
+			return maxNewMarkersCheckPerFrame;
+		}
+		return replayCheckedMarkersCount;
+	}
+
+	/**
+	 * Moves nextMarkerToCheckIndex to the next marker among the candidates at the zoom level.
+	 *
+	 * @return the marker to check, or null if the marker can't be added
+	 */
+	@Nullable
+	private MarkerInfo getNextMarkerToCheck(final float _zoom, final int _markersCount) {
+		if (nextMarkerToCheckIndex >= _markersCount) {
+			nextMarkerToCheckIndex = 0;
+		}
+		final MarkerInfo mi = markerIndex.getCandidate(_zoom, nextMarkerToCheckIndex);
+		nextMarkerToCheckIndex++;
+		currentFrameStats.checkedMarkersCount++;
+
+		if (!markerIndex.isInZoomRange(mi, _zoom)) {
+			// If the marker is in the zoom bucket but not in the exact zoom range, we don't add it
+			return null;
+		}
+		if (!mi.isVisible()) {
+			// If the marker is not visible, we don't add it
+			return null;
+		}
+		if (displayedMarkerIdToScreenRect.containsKey(mi)) {
+			// If the marker is already in the displayed markers, we don't add it
+			return null;
+		}
+		return mi;
+	}
+
+	/**
+	 * Finds the first anchor of titleAnchors for which the marker's floating title is not in conflict with display. The text is measured
+	 * once, and each anchor is checked against the occupancy mask in constant time. Only when the area is taken and the marker's z-index
+	 * is high enough to take priority over some displayed titles, the displayed titles close enough to conflict with any of the anchors are
+	 * gathered once, and the anchors are checked precisely against those.
+	 *
+	 * @param _minZIndex: the minimum z-index among the displayed floating titles
+	 * @param _res:       set to the display area of the floating title for the returned anchor
+	 * @return the anchor to use, or null if the marker's floating title is in conflict with display for all the anchors
+	 */
+	@Nullable
+	private MarkerTitleAnchor findAnchorWithoutConflict(@NonNull final GMFMTGeometryCache _geometryCache,
+		@NonNull final MarkerInfo _markerInfo, final float _minZIndex, @NonNull final RectF _res) {
+		final Point screenLocation = _geometryCache.getScreenLocation(_markerInfo);
+		final Point textSize = _geometryCache.computeTextSize(_markerInfo);
+		currentFrameStats.measuredTitlesCount++;
+		return findAnchorWithoutConflict(_markerInfo, screenLocation, textSize, _minZIndex, _res);
+	}
+
+	/**
+	 * Same as findAnchorWithoutConflict(GMFMTGeometryCache, MarkerInfo, float, RectF), for a floating title already measured.
+	 */
+	@Nullable
+	private MarkerTitleAnchor findAnchorWithoutConflict(@NonNull final MarkerInfo _markerInfo, @NonNull final Point _screenLocation,
+		@NonNull final Point _textSize, final float _minZIndex, @NonNull final RectF _res) {
+		// If the marker's z-index isn't above every displayed title's z-index, any overlap is a conflict
+		final boolean canTakePriority = _markerInfo.getZIndex() > _minZIndex;
+
+		boolean nearbyDisplayedMarkersGathered = false;
+		for (final MarkerTitleAnchor anchor : titleAnchors) {
+			anchor.computeRect(_res, _screenLocation.x, _screenLocation.y, _textSize.x, _textSize.y, textPaddingToMarker);
+			if (occupancyMask.isExcluded(_res) || isCoveringOtherMarkerIcons(_markerInfo, _screenLocation, _res)) {
+				continue;
+			}
+			if (occupancyMask.isTitleAreaFree(_res)) {
+				return anchor;
+			}
+			if (!canTakePriority) {
+				continue;
+			}
+			if (!nearbyDisplayedMarkersGathered) {
+				gatherNearbyDisplayedMarkers(_screenLocation, _textSize);
+				nearbyDisplayedMarkersGathered = true;
+			}
+			if (!isMarkerTitleInConflictWithNearbyTitles(_markerInfo, _res)) {
+				return anchor;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Fills nearbyDisplayedMarkers with the displayed markers whose floating title is close enough to conflict with a floating title of
+	 * the given size placed at the given location with any anchor.
+	 */
+	private void gatherNearbyDisplayedMarkers(@NonNull final Point _screenLocation, @NonNull final Point _textSize) {
+		// Any anchor places the title within this distance of the marker location
+		final float reachX = textPaddingToMarker + _textSize.x;
+		final float reachY = textPaddingToMarker + _textSize.y;
+		nearbyDisplayedMarkers.clear();
+		for (final Map.Entry<MarkerInfo, RectF> entry : displayedMarkerIdToScreenRect.entrySet()) {
+			if (entry.getValue().intersects(//
+				_screenLocation.x - reachX,//
+				_screenLocation.y - reachY,//
+				_screenLocation.x + reachX,//
+				_screenLocation.y + reachY//
+			)) {
+				nearbyDisplayedMarkers.add(entry.getKey());
+			}
+		}
+	}
+
+	private boolean isMarkerTitleInConflictWithNearbyTitles(@NonNull final MarkerInfo _markerInfo, @NonNull final RectF _displayAreaRect) {
+		for (final MarkerInfo mi2 : nearbyDisplayedMarkers) {
 			final RectF rect = displayedMarkerIdToScreenRect.get(mi2);
-			if (RectF.intersects(rect, displayAreaRect)) {
+			if (RectF.intersects(rect, _displayAreaRect)) {
 				// If _markerInfo is in conflict with another marker, we compare the z-index
 				if (_markerInfo.getZIndex() <= mi2.getZIndex()) {
 					// If _markerInfo has equal or lower Z-index, it's considered in conflict with display
@@ -395,29 +1510,15 @@ public class FloatingMarkerTitlesOverlay extends View {
 		return false;
 	}
 
-	private void drawMarkerFloatingTitle(final @NonNull Canvas _canvas, @Nullable final MarkerInfo _markerInfo) {
-		if (_markerInfo == null) {
-			return;
-		}
-		final RectF displayArea = displayedMarkerIdToScreenRect.get(_markerInfo);
-		if (displayArea == null) {
-			return;
-		}
-		final Long addedTime = displayedMarkerIdToAddedTime.get(_markerInfo);
-		final int alpha = computeMarkerFloatingTitleAlpha(addedTime);
-		drawMarkerFloatingTitleOnCanvas(_canvas, _markerInfo, displayArea, alpha);
-	}
-
 	private int computeMarkerFloatingTitleAlpha(@Nullable final Long _addedTime) {
 		final int alpha;
 		if (_addedTime == null) {
 			alpha = 255;
 		} else {
-			long currentTimeMillis = System.currentTimeMillis();
-			if (currentTimeMillis < _addedTime) {
+			if (frameTimeMillis < _addedTime) {
 				alpha = 255;
 			} else {
-				final long elapsedTime = currentTimeMillis - _addedTime;
+				final long elapsedTime = frameTimeMillis - _addedTime;
 				if (elapsedTime > FADE_ANIMATION_TIME) {
 					alpha = 255;
 				} else {
@@ -428,41 +1529,232 @@ public class FloatingMarkerTitlesOverlay extends View {
 		return alpha;
 	}
 
-	private void drawMarkerFloatingTitleOnCanvas(final @NonNull Canvas _canvas, @NonNull final MarkerInfo _markerInfo,
-		@NonNull final RectF _displayArea, final int _alpha) {
-		final int markerColor = _markerInfo.getColor();
-		final String markerTitle = _markerInfo.getTitle();
-		final TextPaint usedTextPaint = _markerInfo.isBoldText() ? boldTextPaint : regularTextPaint;
-		usedTextPaint.setStyle(Paint.Style.STROKE);
-		if (GMFMTUtils.isDarkColor(markerColor)) {
-			usedTextPaint.setColor(Color.WHITE);
-			usedTextPaint.setAlpha((int) (_alpha / 1.2F));
-		} else {
-			usedTextPaint.setColor(Color.BLACK);
-			usedTextPaint.setAlpha((int) (_alpha / 2F));
+	/**
+	 * Draws the displayed floating titles in two passes: first the outlines of all the titles, then the text of all the titles. In each
+	 * pass, the titles are grouped by style, so the text paint is only configured when the style changes instead of several times for
+	 * every title.
+	 * <p>
+	 * Displayed titles can overlap, because of the overlap tolerance or of titles with a higher z-index, and the outline of a title would
+	 * then cover the text of the other. The overlapping titles are drawn after the others, one by one in z-index order.
+	 *
+	 * @return the number of floating titles drawn, which are left in the drawn* arrays in drawing order
+	 */
+	private int drawFloatingTitlesByStyle(@NonNull final Canvas _canvas) {
+		final int drawnTitlesCount = prepareDrawnTitles();
+		final int firstOverlappingTitle = moveOverlappingTitlesLast(drawnTitlesCount);
+		drawFloatingTitlesPass(_canvas, 0, firstOverlappingTitle, true);
+		drawFloatingTitlesPass(_canvas, 0, firstOverlappingTitle, false);
+		for (int i = firstOverlappingTitle; i < drawnTitlesCount; i++) {
+			drawFloatingTitlesPass(_canvas, i, i + 1, true);
+			drawFloatingTitlesPass(_canvas, i, i + 1, false);
 		}
-		final String truncatedText = GMFMTUtils.getTruncatedText(usedTextPaint, maxTextWidth, _displayArea.height(), markerTitle);
-		if (truncatedText == null) {
-			return;
+		return drawnTitlesCount;
+	}
+
+	/**
+	 * Fills the drawn* arrays with the displayed floating titles to draw, sorted in drawing order.
+	 *
+	 * @return the number of floating titles to draw
+	 */
+	private int prepareDrawnTitles() {
+		final int displayedTitlesCount = displayedMarkersList.size();
+		if (drawnMarkers.length < displayedTitlesCount) {
+			drawnMarkers = new MarkerInfo[displayedTitlesCount];
+			drawnStyles = new MarkerStyle[displayedTitlesCount];
+			drawnAreas = new RectF[displayedTitlesCount];
+			drawnTexts = new String[displayedTitlesCount];
+			drawnAlphas = new int[displayedTitlesCount];
+			drawnOverlapping = new boolean[displayedTitlesCount];
+			drawnZIndexes = new float[displayedTitlesCount];
 		}
-		GMFMTUtils.drawMultiLineText(//
-			_canvas,//
-			usedTextPaint,//
-			_displayArea.left,//
-			_displayArea.top,//
-			(float) Math.ceil(_displayArea.width()),//
-			truncatedText//
-		);
-		usedTextPaint.setStyle(Paint.Style.FILL);
-		usedTextPaint.setColor(markerColor);
-		usedTextPaint.setAlpha(_alpha);
-		GMFMTUtils.drawMultiLineText(//
-			_canvas,//
-			usedTextPaint,//
-			_displayArea.left,//
-			_displayArea.top,//
-			(float) Math.ceil(_displayArea.width()),//
-			truncatedText//
+		for (int i = 0; i < displayedTitlesCount; i++) {
+			drawnMarkers[i] = displayedMarkersList.get(i);
+		}
+		Arrays.sort(drawnMarkers, 0, displayedTitlesCount, DRAWING_ORDER_COMPARATOR);
+
+		int res = 0;
+		for (int i = 0; i < displayedTitlesCount; i++) {
+			final MarkerInfo mi = drawnMarkers[i];
+			final RectF displayArea = displayedMarkerIdToScreenRect.get(mi);
+			if (displayArea == null) {
+				continue;
+			}
+			final MarkerStyle style = mi.getStyle();
+			final GMFMTGlyphAdvanceCache usedGlyphAdvanceCache = style.isBoldText() ? boldGlyphAdvanceCache : regularGlyphAdvanceCache;
+			final String truncatedText = getTruncatedTitle(style, usedGlyphAdvanceCache, mi.getTitle(), displayArea.height());
+			if (truncatedText == null) {
+				continue;
+			}
+			drawnMarkers[res] = mi;
+			drawnStyles[res] = style;
+			drawnAreas[res] = displayArea;
+			drawnTexts[res] = truncatedText;
+			drawnAlphas[res] = computeMarkerFloatingTitleAlpha(displayedMarkerIdToAddedTime.get(mi));
+			res++;
+		}
+		// Releasing the references to objects that are no longer drawn
+		Arrays.fill(drawnMarkers, res, drawnMarkers.length, null);
+		Arrays.fill(drawnStyles, res, drawnStyles.length, null);
+		Arrays.fill(drawnAreas, res, drawnAreas.length, null);
+		Arrays.fill(drawnTexts, res, drawnTexts.length, null);
+		return res;
+	}
+
+	/**
+	 * Moves the floating titles whose outline overlaps another title after the other titles in the drawn* arrays, sorted by z-index, the
+	 * order of the other titles is kept.
+	 *
+	 * @return the index of the first overlapping title, or _drawnTitlesCount if no title overlaps another one
+	 */
+	private int moveOverlappingTitlesLast(final int _drawnTitlesCount) {
+		final float outlineWidth = regularTextPaint.getStrokeWidth();
+		int overlappingTitlesCount = 0;
+		for (int i = 0; i < _drawnTitlesCount; i++) {
+			final RectF area = drawnAreas[i];
+			drawnOverlapping[i] = false;
+			for (int j = 0; j < _drawnTitlesCount; j++) {
+				if (i != j && drawnAreas[j].intersects(//
+					area.left - outlineWidth,//
+					area.top - outlineWidth,//
+					area.right + outlineWidth,//
+					area.bottom + outlineWidth//
+				)) {
+					drawnOverlapping[i] = true;
+					drawnZIndexes[i] = drawnMarkers[i].getZIndex();
+					overlappingTitlesCount++;
+					break;
+				}
+			}
+		}
+		if (overlappingTitlesCount == 0) {
+			return _drawnTitlesCount;
+		}
+		// Stable insertion sort, the overlapping titles are few in most frames so they are only moved a few times
+		for (int i = 1; i < _drawnTitlesCount; i++) {
+			for (int j = i; j > 0 && isDrawnBefore(j, j - 1); j--) {
+				swapDrawnTitles(j, j - 1);
+			}
+		}
+		return _drawnTitlesCount - overlappingTitlesCount;
+	}
+
+	private boolean isDrawnBefore(final int _index1, final int _index2) {
+		if (drawnOverlapping[_index1] != drawnOverlapping[_index2]) {
+			return !drawnOverlapping[_index1];
+		}
+		return drawnOverlapping[_index1] && drawnZIndexes[_index1] < drawnZIndexes[_index2];
+	}
+
+	private void swapDrawnTitles(final int _index1, final int _index2) {
+		final MarkerInfo marker = drawnMarkers[_index1];
+		drawnMarkers[_index1] = drawnMarkers[_index2];
+		drawnMarkers[_index2] = marker;
+		final MarkerStyle style = drawnStyles[_index1];
+		drawnStyles[_index1] = drawnStyles[_index2];
+		drawnStyles[_index2] = style;
+		final RectF area = drawnAreas[_index1];
+		drawnAreas[_index1] = drawnAreas[_index2];
+		drawnAreas[_index2] = area;
+		final String text = drawnTexts[_index1];
+		drawnTexts[_index1] = drawnTexts[_index2];
+		drawnTexts[_index2] = text;
+		final int alpha = drawnAlphas[_index1];
+		drawnAlphas[_index1] = drawnAlphas[_index2];
+		drawnAlphas[_index2] = alpha;
+		final boolean overlapping = drawnOverlapping[_index1];
+		drawnOverlapping[_index1] = drawnOverlapping[_index2];
+		drawnOverlapping[_index2] = overlapping;
+		final float zIndex = drawnZIndexes[_index1];
+		drawnZIndexes[_index1] = drawnZIndexes[_index2];
+		drawnZIndexes[_index2] = zIndex;
+	}
+
+	/**
+	 * Truncates a title to fit in its display area, using the persistent text metrics cache if enabled to avoid creating a StaticLayout.
+	 */
+	@Nullable
+	private String getTruncatedTitle(@NonNull final MarkerStyle _style, @NonNull final GMFMTGlyphAdvanceCache _glyphAdvanceCache,
+		@NonNull final String _title, final float _height) {
+		final GMFMTTextMetricsDiskCache diskCache = textMetricsDiskCache;
+		if (diskCache == null || _title.length() < 3 || GMFMTUtils.isFittingSingleLine(_glyphAdvanceCache, (int) maxTextWidth, _title)) {
+			return GMFMTUtils.getTruncatedText(_glyphAdvanceCache, maxTextWidth, _height, _title);
+		}
+		final long key = GMFMTTextMetricsDiskCache.computeKey(//
+			_title,//
+			_style.isBoldText(),//
+			_glyphAdvanceCache.getTextPaint().getTextSize(),//
+			(int) maxTextWidth,//
+			(int) maxTextHeight//
 		);
+		if (diskCache.read(key, textMetricsBuffer)) {
+			final int truncationEnd = textMetricsBuffer[2];
+			if (truncationEnd == GMFMTTextMetricsDiskCache.TRUNCATION_NONE) {
+				return _title;
+			}
+			if (truncationEnd == GMFMTTextMetricsDiskCache.TRUNCATION_NOT_DISPLAYABLE) {
+				return null;
+			}
+			if (truncationEnd >= 0 && truncationEnd <= _title.length()) {
+				return _title.substring(0, truncationEnd) + "...";
+			}
+		}
+		final String res = GMFMTUtils.getTruncatedText(_glyphAdvanceCache, maxTextWidth, _height, _title);
+		final int truncationEnd;
+		if (res == null) {
+			truncationEnd = GMFMTTextMetricsDiskCache.TRUNCATION_NOT_DISPLAYABLE;
+		} else if (res.equals(_title)) {
+			truncationEnd = GMFMTTextMetricsDiskCache.TRUNCATION_NONE;
+		} else {
+			truncationEnd = res.length() - 3;
+		}
+		diskCache.writeTruncation(key, truncationEnd);
+		return res;
+	}
+
+	/**
+	 * Draws either the outlines or the text of the drawn floating titles from _start (included) to _end (excluded).
+	 */
+	private void drawFloatingTitlesPass(@NonNull final Canvas _canvas, final int _start, final int _end, final boolean _outlinePass) {
+		MarkerStyle currentStyle = null;
+		GMFMTGlyphAdvanceCache usedGlyphAdvanceCache = regularGlyphAdvanceCache;
+		int currentAlpha = -1;
+		for (int i = _start; i < _end; i++) {
+			final MarkerStyle style = drawnStyles[i];
+			if (!style.equals(currentStyle)) {
+				currentStyle = style;
+				usedGlyphAdvanceCache = style.isBoldText() ? boldGlyphAdvanceCache : regularGlyphAdvanceCache;
+				final TextPaint usedTextPaint = usedGlyphAdvanceCache.getTextPaint();
+				if (_outlinePass) {
+					usedTextPaint.setStyle(Paint.Style.STROKE);
+					usedTextPaint.setColor(style.getOutlineColor());
+				} else {
+					usedTextPaint.setStyle(Paint.Style.FILL);
+					usedTextPaint.setColor(style.getColor());
+				}
+				currentAlpha = -1;
+			}
+			final int alpha = _outlinePass ? style.getOutlineAlpha(drawnAlphas[i]) : drawnAlphas[i];
+			if (alpha != currentAlpha) {
+				usedGlyphAdvanceCache.getTextPaint().setAlpha(alpha);
+				currentAlpha = alpha;
+			}
+			final RectF displayArea = drawnAreas[i];
+			GMFMTUtils.drawMultiLineText(//
+				_canvas,//
+				usedGlyphAdvanceCache,//
+				displayArea.left,//
+				displayArea.top,//
+				(float) Math.ceil(displayArea.width()),//
+				drawnTexts[i]//
+			);
+		}
+	}
+
+	/**
+	 * A change to the markers, exclusion zones, settings or stats requested from any thread, applied by the drawing thread in
+	 * applyPendingChanges()
+	 */
+	private interface PendingChange {
+		void apply();
 	}
 }
@@ -0,0 +1,241 @@
+package com.exlyo.gmfmt;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.PixelFormat;
+import android.graphics.Point;
+import android.graphics.PorterDuff;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.AttributeSet;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.CameraPosition;
+
+/**
+ * Alternative to FloatingMarkerTitlesOverlay drawing the floating titles from a dedicated render thread, on a transparent surface placed
+ * on top of the map, so the placement and drawing of the titles never run on the main thread.
+ * <p>
+ * The titles are placed by a FloatingMarkerTitlesOverlay used as engine, returned by getTitlesOverlay() to add markers and change
+ * settings (setSource() must be called on this view instead). The main thread only samples the map's camera position once per frame,
+ * and the render thread computes the screen locations from it with the Web Mercator projection, so maps with a camera tilt are not
+ * supported: the titles are hidden while the camera is tilted.
+ * <p>
+ * The markers are read by the render thread, so they must be MarkerInfo objects created from coordinates rather than from a Marker, since
+ * a Marker can only be used on the main thread: the engine's addMarker() rejects the others. Like the markers, the settings of the engine
+ * can be changed at any time, the changes are applied by the render thread at the start of its next frame.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class FloatingMarkerTitlesSurfaceView extends SurfaceView {
+	/* Time between two samplings of the camera position on the main thread, and minimum time between two frames on the render thread */
+	private static final long FRAME_INTERVAL = 16;
+	/* Time to wait for a camera position when there is nothing to draw */
+	private static final long IDLE_FRAME_INTERVAL = 100;
+
+	@NonNull
+	private final FloatingMarkerTitlesOverlay titlesOverlay;
+
+	/* Only accessed on the main thread */
+	@Nullable
+	private GoogleMap googleMap;
+
+	/* Last camera state sampled on the main thread, null if there is no map */
+	@Nullable
+	private volatile CameraSnapshot cameraSnapshot;
+
+	private volatile int surfaceWidth;
+	private volatile int surfaceHeight;
+
+	@Nullable
+	private RenderThread renderThread;
+
+	@NonNull
+	private final Runnable cameraSampler = new Runnable() {
+		@Override
+		public void run() {
+			final GoogleMap map = googleMap;
+			if (map == null) {
+				return;
+			}
+			final CameraPosition cameraPosition = map.getCameraPosition();
+			final Point targetScreenLocation = map.getProjection().toScreenLocation(cameraPosition.target);
+			cameraSnapshot = new CameraSnapshot(cameraPosition, targetScreenLocation.x, targetScreenLocation.y);
+			postDelayed(this, FRAME_INTERVAL);
+		}
+	};
+
+	public FloatingMarkerTitlesSurfaceView(final Context context) {
+		super(context);
+		titlesOverlay = new FloatingMarkerTitlesOverlay(context);
+		initFMTSurfaceView();
+	}
+
+	public FloatingMarkerTitlesSurfaceView(final Context context, @Nullable final AttributeSet attrs) {
+		super(context, attrs);
+		titlesOverlay = new FloatingMarkerTitlesOverlay(context);
+		initFMTSurfaceView();
+	}
+
+	public FloatingMarkerTitlesSurfaceView(final Context context, @Nullable final AttributeSet attrs, final int defStyleAttr) {
+		super(context, attrs, defStyleAttr);
+		titlesOverlay = new FloatingMarkerTitlesOverlay(context);
+		initFMTSurfaceView();
+	}
+
+	private void initFMTSurfaceView() {
+		titlesOverlay.setDrawnFromRenderThread(true);
+		// Drawing above the map's own surface, but below the window so the other views stay on top of the titles
+		setZOrderMediaOverlay(true);
+		final SurfaceHolder holder = getHolder();
+		holder.setFormat(PixelFormat.TRANSLUCENT);
+		holder.addCallback(new SurfaceHolder.Callback() {
+			@Override
+			public void surfaceCreated(final SurfaceHolder _holder) {
+				renderThread = new RenderThread(_holder);
+				renderThread.start();
+			}
+
+			@Override
+			public void surfaceChanged(final SurfaceHolder _holder, final int _format, final int _width, final int _height) {
+				surfaceWidth = _width;
+				surfaceHeight = _height;
+			}
+
+			@Override
+			public void surfaceDestroyed(final SurfaceHolder _holder) {
+				final RenderThread thread = renderThread;
+				renderThread = null;
+				if (thread != null) {
+					// The surface can't be used anymore once this method returns
+					thread.stopAndJoin();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the engine placing the floating titles, to add markers and change settings. Its setSource() method must not be called.
+	 */
+	@NonNull
+	public FloatingMarkerTitlesOverlay getTitlesOverlay() {
+		return titlesOverlay;
+	}
+
+	/**
+	 * Sets the map to display the floating titles for. Must be called on the main thread.
+	 *
+	 * @param _googleMap: the map, or null to stop displaying floating titles and remove all the tracked markers
+	 */
+	public void setSource(@Nullable final GoogleMap _googleMap) {
+		removeCallbacks(cameraSampler);
+		googleMap = _googleMap;
+		if (_googleMap == null) {
+			cameraSnapshot = null;
+			titlesOverlay.clearMarkers();
+		} else {
+			cameraSampler.run();
+		}
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		removeCallbacks(cameraSampler);
+		cameraSampler.run();
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		removeCallbacks(cameraSampler);
+		super.onDetachedFromWindow();
+	}
+
+	private static final class CameraSnapshot {
+		@NonNull
+		private final CameraPosition cameraPosition;
+		private final int targetScreenX;
+		private final int targetScreenY;
+
+		private CameraSnapshot(@NonNull final CameraPosition _cameraPosition, final int _targetScreenX, final int _targetScreenY) {
+			cameraPosition = _cameraPosition;
+			targetScreenX = _targetScreenX;
+			targetScreenY = _targetScreenY;
+		}
+	}
+
+	private final class RenderThread extends Thread {
+		@NonNull
+		private final SurfaceHolder holder;
+		private volatile boolean running = true;
+
+		private RenderThread(@NonNull final SurfaceHolder _holder) {
+			super("FloatingMarkerTitlesRenderThread");
+			holder = _holder;
+		}
+
+		@Override
+		public void run() {
+			final GMFMTMercatorProjection projection = new GMFMTMercatorProjection(getResources().getDisplayMetrics().density);
+			final GMFMTGeometryCache geometryCache = new GMFMTGeometryCache(titlesOverlay, projection);
+			titlesOverlay.setGeometryCache(geometryCache);
+			try {
+				while (running) {
+					final long frameStartTime = System.currentTimeMillis();
+					final boolean titlesDrawn = drawFrame(projection, geometryCache);
+					final long frameInterval = titlesDrawn ? FRAME_INTERVAL : IDLE_FRAME_INTERVAL;
+					final long remainingTime = frameStartTime + frameInterval - System.currentTimeMillis();
+					if (remainingTime > 0) {
+						Thread.sleep(remainingTime);
+					}
+				}
+			} catch (InterruptedException e) {
+				// Stopped while waiting for the next frame
+			} finally {
+				titlesOverlay.setGeometryCache(null);
+				// The engine is never attached to a window, the placement threads are stopped with the render thread instead
+				titlesOverlay.releaseParallelPlacer();
+			}
+		}
+
+		/**
+		 * @return true if floating titles were drawn, false if there was nothing to draw
+		 */
+		private boolean drawFrame(@NonNull final GMFMTMercatorProjection _projection, @NonNull final GMFMTGeometryCache _geometryCache) {
+			final Canvas canvas = holder.lockCanvas();
+			if (canvas == null) {
+				titlesOverlay.skipFrame();
+				return false;
+			}
+			try {
+				canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+				final CameraSnapshot snapshot = cameraSnapshot;
+				final int width = surfaceWidth;
+				final int height = surfaceHeight;
+				if (snapshot == null || snapshot.cameraPosition.tilt != 0 || width <= 0 || height <= 0) {
+					titlesOverlay.skipFrame();
+					return false;
+				}
+				_projection.setCameraAndTarget(snapshot.cameraPosition, snapshot.targetScreenX, snapshot.targetScreenY);
+				return titlesOverlay.drawFrame(canvas, _geometryCache, width, height);
+			} finally {
+				holder.unlockCanvasAndPost(canvas);
+			}
+		}
+
+		private void stopAndJoin() {
+			running = false;
+			interrupt();
+			boolean joined = false;
+			while (!joined) {
+				try {
+					join();
+					joined = true;
+				} catch (InterruptedException e) {
+					// Waiting for the render thread anyway, since the surface is about to be destroyed
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.exlyo.gmfmt;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Counters of the work done by a FloatingMarkerTitlesOverlay to place the floating titles, either for a single frame or accumulated over
+ * several frames. Useful to verify how often floating titles get added and removed (churn) while the camera moves.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class FloatingTitlesStats {
+	int framesCount;
+	int checkedMarkersCount;
+	int addedTitlesCount;
+	int removedTitlesCount;
+	int measuredTitlesCount;
+	int displayedTitlesCount;
+
+	FloatingTitlesStats() {
+	}
+
+	FloatingTitlesStats(@NonNull final FloatingTitlesStats _source) {
+		set(_source);
+	}
+
+	void reset() {
+		framesCount = 0;
+		checkedMarkersCount = 0;
+		addedTitlesCount = 0;
+		removedTitlesCount = 0;
+		measuredTitlesCount = 0;
+		displayedTitlesCount = 0;
+	}
+
+	void set(@NonNull final FloatingTitlesStats _source) {
+		framesCount = _source.framesCount;
+		checkedMarkersCount = _source.checkedMarkersCount;
+		addedTitlesCount = _source.addedTitlesCount;
+		removedTitlesCount = _source.removedTitlesCount;
+		measuredTitlesCount = _source.measuredTitlesCount;
+		displayedTitlesCount = _source.displayedTitlesCount;
+	}
+
+	void add(@NonNull final FloatingTitlesStats _other) {
+		framesCount += _other.framesCount;
+		checkedMarkersCount += _other.checkedMarkersCount;
+		addedTitlesCount += _other.addedTitlesCount;
+		removedTitlesCount += _other.removedTitlesCount;
+		measuredTitlesCount += _other.measuredTitlesCount;
+		displayedTitlesCount += _other.displayedTitlesCount;
+	}
+
+	/**
+	 * @return the number of frames drawn
+	 */
+	public int getFramesCount() {
+		return framesCount;
+	}
+
+	/**
+	 * @return the number of markers checked for a new floating title to display
+	 */
+	public int getCheckedMarkersCount() {
+		return checkedMarkersCount;
+	}
+
+	/**
+	 * @return the number of floating titles that started being displayed
+	 */
+	public int getAddedTitlesCount() {
+		return addedTitlesCount;
+	}
+
+	/**
+	 * @return the number of floating titles that stopped being displayed because they went out of view, became invisible, or got in
+	 * conflict with other titles or exclusion zones
+	 */
+	public int getRemovedTitlesCount() {
+		return removedTitlesCount;
+	}
+
+	/**
+	 * @return the number of times a floating title's text was measured, which is the expensive part of placing a title
+	 */
+	public int getMeasuredTitlesCount() {
+		return measuredTitlesCount;
+	}
+
+	/**
+	 * @return the number of floating titles displayed at the end of the frame, summed over all the frames for accumulated stats
+	 */
+	public int getDisplayedTitlesCount() {
+		return displayedTitlesCount;
+	}
+
+	@Override
+	public String toString() {
+		return "FloatingTitlesStats{" +//
+			"framesCount=" + framesCount +//
+			", checkedMarkersCount=" + checkedMarkersCount +//
+			", addedTitlesCount=" + addedTitlesCount +//
+			", removedTitlesCount=" + removedTitlesCount +//
+			", measuredTitlesCount=" + measuredTitlesCount +//
+			", displayedTitlesCount=" + displayedTitlesCount +//
+			'}';
+	}
+}
@@ -1,14 +1,10 @@
 package com.exlyo.gmfmt;
 
-import android.graphics.Canvas;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.graphics.RectF;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.text.TextPaint;
 
-import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 
@@ -22,27 +18,36 @@ class GMFMTGeometryCache {
 	@NonNull
 	private final Rect viewBounds;
 	@NonNull
-	private final GoogleMap googleMap;
+	private final GMFMTMapProjection mapProjection;
+	/* Screen location of the markers, along with the coordinates they were computed for */
 	@NonNull
-	private final Map<LatLng, Point> cacheMap = new HashMap<>();
+	private final Map<MarkerInfo, CachedLocation> cacheMap = new HashMap<>();
 
 	@Nullable
 	private CameraPosition lastFrameCameraPosition = null;
 
-	GMFMTGeometryCache(@NonNull final FloatingMarkerTitlesOverlay _fmto, @NonNull final GoogleMap _googleMap) {
+	/* Reusable buffer for the text metrics disk cache reads */
+	@NonNull
+	private final int[] textMetricsBuffer = new int[3];
+
+	GMFMTGeometryCache(@NonNull final FloatingMarkerTitlesOverlay _fmto, @NonNull final GMFMTMapProjection _mapProjection) {
 		fmto = _fmto;
 		viewBounds = new Rect(0, 0, 1, 1);
-		googleMap = _googleMap;
+		mapProjection = _mapProjection;
 	}
 
 	/**
 	 * Called by the parent FloatingMarkerTitlesOverlay before drawing every frame. Updates information important for the cache and gets
 	 * to a ready state to draw the next frame.
 	 */
-	public void prepareForNewFrame(@NonNull final Canvas _canvas) {
-		viewBounds.right = GMFMTUtils.getCanvasWidth(_canvas);
-		viewBounds.bottom = GMFMTUtils.getCanvasHeight(_canvas);
-		final CameraPosition cameraPosition = googleMap.getCameraPosition();
+	public void prepareForNewFrame(final int _viewWidth, final int _viewHeight) {
+		if (viewBounds.right != _viewWidth || viewBounds.bottom != _viewHeight) {
+			// The screen location of the map center depends on the view size, so the cached screen locations are no longer valid
+			cacheMap.clear();
+		}
+		viewBounds.right = _viewWidth;
+		viewBounds.bottom = _viewHeight;
+		final CameraPosition cameraPosition = mapProjection.updateCamera();
 		if (lastFrameCameraPosition != null) {
 			smartCacheUpdate(lastFrameCameraPosition, cameraPosition);
 		}
@@ -51,7 +56,7 @@ class GMFMTGeometryCache {
 
 	/**
 	 * Updates the cache content for cacheMap in a smart way: normally, each floating marker title's location on screen needs to be
-	 * calculated using the following code: <code>googleMap.getProjection().toScreenLocation(_latLng)</code>
+	 * calculated using the following code: <code>mapProjection.toScreenLocation(_latLng)</code>
 	 * <p>
 	 * In the case the map's zoom level or bearing hasn't changed any marker's screen location will receive the same update/translation. The
 	 * translation is applicable to any marker already cached, so in this case we will only compute the updated screen location for one
@@ -78,48 +83,147 @@ class GMFMTGeometryCache {
 			return;
 		}
 
-		final Iterator<LatLng> iterator = cacheMap.keySet().iterator();
-		final LatLng latLngSample = iterator.next();
-		final Point pointSample = cacheMap.get(latLngSample);
-		final Point updatedPointSample = googleMap.getProjection().toScreenLocation(latLngSample);
-		final int deltaX = updatedPointSample.x - pointSample.x;
-		final int deltaY = updatedPointSample.y - pointSample.y;
-		for (final Point p : cacheMap.values()) {
-			p.x += deltaX;
-			p.y += deltaY;
+		final Iterator<CachedLocation> iterator = cacheMap.values().iterator();
+		final CachedLocation sample = iterator.next();
+		final Point updatedPointSample = mapProjection.toScreenLocation(sample.coordinates);
+		final int deltaX = updatedPointSample.x - sample.point.x;
+		final int deltaY = updatedPointSample.y - sample.point.y;
+		for (final CachedLocation cl : cacheMap.values()) {
+			cl.point.x += deltaX;
+			cl.point.y += deltaY;
 		}
 	}
 
+	/**
+	 * Returns the screen location of a marker for the current frame. The returned Point is updated in place when the camera or the marker
+	 * moves, so it should not be kept across frames.
+	 * <p>
+	 * The cache has one entry per marker: when a marker moves, its entry is reprojected in place instead of adding a new one.
+	 */
 	@NonNull
-	public Point getScreenLocation(@NonNull final LatLng _latLng) {
-		final Point cacheRes = cacheMap.get(_latLng);
+	public Point getScreenLocation(@NonNull final MarkerInfo _markerInfo) {
+		final LatLng coordinates = fmto.getFrameCoordinates(_markerInfo);
+		final CachedLocation cacheRes = cacheMap.get(_markerInfo);
 		if (cacheRes != null) {
-			return cacheRes;
+			if (cacheRes.coordinates.equals(coordinates)) {
+				return cacheRes.point;
+			}
+			final Point updatedPoint = mapProjection.toScreenLocation(coordinates);
+			cacheRes.coordinates = coordinates;
+			cacheRes.point.x = updatedPoint.x;
+			cacheRes.point.y = updatedPoint.y;
+			return cacheRes.point;
 		}
-		final Point res = googleMap.getProjection().toScreenLocation(_latLng);
-		cacheMap.put(_latLng, res);
+		final Point res = mapProjection.toScreenLocation(coordinates);
+		cacheMap.put(_markerInfo, new CachedLocation(coordinates, res));
 		return res;
 	}
 
+	/**
+	 * Removes a marker from the cache, when it's no longer tracked by the overlay.
+	 */
+	public void forget(@NonNull final MarkerInfo _markerInfo) {
+		cacheMap.remove(_markerInfo);
+	}
+
+	public void clear() {
+		cacheMap.clear();
+	}
+
+	/**
+	 * Measures the space (width and height) taken on the screen by a marker's floating title. This is the expensive part of placing a
+	 * title, so the result should be reused for all the candidate anchors of the title.
+	 * <p>
+	 * Titles fitting on a single line are measured directly from the glyph advances. Other titles are looked up in the persistent text
+	 * metrics cache if enabled, and only measured with a StaticLayout if not found.
+	 */
 	@NonNull
-	public RectF computeDisplayAreaRect(@NonNull final MarkerInfo _markerInfo) {
-		final Point screenLocation = getScreenLocation(_markerInfo.getCoordinates());
-		final TextPaint usedTextPaint = _markerInfo.isBoldText() ? fmto.boldTextPaint : fmto.regularTextPaint;
-		final Point textSize = GMFMTUtils.measureMultiLineEllipsizedText(//
-			usedTextPaint,//
+	public Point computeTextSize(@NonNull final MarkerInfo _markerInfo) {
+		final boolean boldText = _markerInfo.isBoldText();
+		return computeTextSize(//
+			boldText ? fmto.boldGlyphAdvanceCache : fmto.regularGlyphAdvanceCache,//
+			fmto.textMetricsDiskCache,//
+			textMetricsBuffer,//
+			_markerInfo.getTitle(),//
+			boldText,//
 			(int) fmto.maxTextWidth,//
-			(int) fmto.maxTextHeight,//
-			_markerInfo.getTitle()//
+			(int) fmto.maxTextHeight//
 		);
-		final float left = screenLocation.x + fmto.textPaddingToMarker;
-		final int top = screenLocation.y - textSize.y / 2;
-		final float right = screenLocation.x + textSize.x + fmto.textPaddingToMarker;
-		final int bottom = screenLocation.y + textSize.y / 2;
-		return new RectF(left, top, right, bottom);
 	}
 
-	public boolean isInScreenBounds(@NonNull final LatLng _coordinates) {
-		final Point point = getScreenLocation(_coordinates);
+	/**
+	 * Same as computeTextSize(MarkerInfo), without accessing the MarkerInfo or the overlay, so it can be called from any thread as long as
+	 * the glyph advance cache and the buffer are only used by that thread.
+	 *
+	 * @param _textMetricsBuffer: buffer of 3 ints for the text metrics disk cache reads
+	 */
+	@NonNull
+	static Point computeTextSize(@NonNull final GMFMTGlyphAdvanceCache _glyphAdvanceCache,
+		@Nullable final GMFMTTextMetricsDiskCache _diskCache, @NonNull final int[] _textMetricsBuffer, @NonNull final String _title,
+		final boolean _boldText, final int _maxTextWidth, final int _maxTextHeight) {
+		final Point singleLineSize = GMFMTUtils.measureFittingSingleLineText(_glyphAdvanceCache, _maxTextWidth, _title);
+		if (singleLineSize != null) {
+			return singleLineSize;
+		}
+
+		long key = 0;
+		if (_diskCache != null) {
+			key = GMFMTTextMetricsDiskCache.computeKey(//
+				_title,//
+				_boldText,//
+				_glyphAdvanceCache.getTextPaint().getTextSize(),//
+				_maxTextWidth,//
+				_maxTextHeight//
+			);
+			if (_diskCache.read(key, _textMetricsBuffer)) {
+				return new Point(_textMetricsBuffer[0], _textMetricsBuffer[1]);
+			}
+		}
+		final Point res = GMFMTUtils.measureMultiLineEllipsizedText(_glyphAdvanceCache, _maxTextWidth, _maxTextHeight, _title);
+		if (_diskCache != null) {
+			_diskCache.writeSize(key, res.x, res.y);
+		}
+		return res;
+	}
+
+	/**
+	 * @return the camera position of the frame being drawn
+	 */
+	@Nullable
+	public CameraPosition getCameraPosition() {
+		return lastFrameCameraPosition;
+	}
+
+	/**
+	 * @return the camera zoom level of the frame being drawn
+	 */
+	public float getZoom() {
+		final CameraPosition cameraPosition = lastFrameCameraPosition;
+		return cameraPosition == null ? 0F : cameraPosition.zoom;
+	}
+
+	public int getViewWidth() {
+		return viewBounds.width();
+	}
+
+	public int getViewHeight() {
+		return viewBounds.height();
+	}
+
+	public boolean isInScreenBounds(@NonNull final MarkerInfo _markerInfo) {
+		final Point point = getScreenLocation(_markerInfo);
 		return viewBounds.contains(point.x, point.y);
 	}
+
+	private static final class CachedLocation {
+		@NonNull
+		private LatLng coordinates;
+		@NonNull
+		private final Point point;
+
+		private CachedLocation(@NonNull final LatLng _coordinates, @NonNull final Point _point) {
+			coordinates = _coordinates;
+			point = _point;
+		}
+	}
 }
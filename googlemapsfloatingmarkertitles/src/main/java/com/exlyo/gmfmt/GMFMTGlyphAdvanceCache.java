@@ -0,0 +1,106 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextPaint;
+
+import java.util.Arrays;
+
+/**
+ * Caches the advance width of characters for a TextPaint, to measure single-line text without building a StaticLayout.
+ * <p>
+ * Only printable characters from the Latin alphabets (from space to the end of the Latin Extended-B block) are cached: they are drawn one
+ * glyph per character, so the width of a text is the sum of the advances of its characters, give or take kerning. Text containing other
+ * characters can't be measured with this cache. The cache resets itself when the text size or typeface of the TextPaint changes.
+ * <p>
+ * Not thread-safe: each thread measuring text needs its own instance.
+ */
+final class GMFMTGlyphAdvanceCache {
+	private static final char FIRST_CACHED_CHAR = ' ';
+	private static final char LAST_CACHED_CHAR = '\u024F';
+
+	@NonNull
+	private final TextPaint textPaint;
+
+	/* Advance width of each cached character, or NaN if not measured yet */
+	@NonNull
+	private final float[] advances = new float[LAST_CACHED_CHAR - FIRST_CACHED_CHAR + 1];
+
+	@NonNull
+	private final Paint.FontMetricsInt fontMetrics = new Paint.FontMetricsInt();
+
+	/* Reusable buffers for measuring one character */
+	@NonNull
+	private final char[] charBuffer = new char[1];
+	@NonNull
+	private final float[] widthBuffer = new float[1];
+
+	/* The TextPaint configuration the cached values were measured with */
+	private float cachedTextSize = -1;
+	@Nullable
+	private Typeface cachedTypeface;
+
+	GMFMTGlyphAdvanceCache(@NonNull final TextPaint _textPaint) {
+		textPaint = _textPaint;
+	}
+
+	@NonNull
+	public TextPaint getTextPaint() {
+		return textPaint;
+	}
+
+	/**
+	 * @return the width of the text drawn on a single line, or -1 if the text contains characters that can't be measured with the cache
+	 */
+	public float measureSingleLine(@NonNull final String _text) {
+		validateCache();
+		float res = 0;
+		final int length = _text.length();
+		for (int i = 0; i < length; i++) {
+			final char c = _text.charAt(i);
+			if (c < FIRST_CACHED_CHAR || c > LAST_CACHED_CHAR || (c >= '\u007F' && c < '\u00A0')) {
+				return -1;
+			}
+			final int index = c - FIRST_CACHED_CHAR;
+			float advance = advances[index];
+			if (Float.isNaN(advance)) {
+				charBuffer[0] = c;
+				textPaint.getTextWidths(charBuffer, 0, 1, widthBuffer);
+				advance = widthBuffer[0];
+				advances[index] = advance;
+			}
+			res += advance;
+		}
+		return res;
+	}
+
+	/**
+	 * @return the ascent of a line of text, negative like Paint.FontMetricsInt.ascent
+	 */
+	public int getAscent() {
+		validateCache();
+		return fontMetrics.ascent;
+	}
+
+	/**
+	 * @return the height of a single line of text, as measured by a StaticLayout without font padding
+	 */
+	public int getLineHeight() {
+		validateCache();
+		return fontMetrics.descent - fontMetrics.ascent;
+	}
+
+	private void validateCache() {
+		final float textSize = textPaint.getTextSize();
+		final Typeface typeface = textPaint.getTypeface();
+		if (textSize == cachedTextSize && typeface == cachedTypeface) {
+			return;
+		}
+		Arrays.fill(advances, Float.NaN);
+		textPaint.getFontMetricsInt(fontMetrics);
+		cachedTextSize = textSize;
+		cachedTypeface = typeface;
+	}
+}
@@ -0,0 +1,44 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.Point;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.Projection;
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * GMFMTMapProjection backed by a GoogleMap. Must be used on the main thread, like the GoogleMap itself.
+ */
+class GMFMTGoogleMapProjection implements GMFMTMapProjection {
+	@NonNull
+	private final GoogleMap googleMap;
+
+	/* The map projection is a snapshot of the camera state, so we only retrieve it once per frame */
+	@Nullable
+	private Projection projection;
+
+	GMFMTGoogleMapProjection(@NonNull final GoogleMap _googleMap) {
+		googleMap = _googleMap;
+	}
+
+	@NonNull
+	@Override
+	public CameraPosition updateCamera() {
+		projection = googleMap.getProjection();
+		return googleMap.getCameraPosition();
+	}
+
+	@NonNull
+	@Override
+	public Point toScreenLocation(@NonNull final LatLng _latLng) {
+		Projection p = projection;
+		if (p == null) {
+			p = googleMap.getProjection();
+			projection = p;
+		}
+		return p.toScreenLocation(_latLng);
+	}
+}
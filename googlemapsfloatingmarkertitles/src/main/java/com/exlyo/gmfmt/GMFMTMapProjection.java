@@ -0,0 +1,24 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.Point;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Source of the camera position and screen projection used by GMFMTGeometryCache. Usually backed by a GoogleMap, but can also be
+ * computed from a recorded camera position to draw frames without a map.
+ */
+interface GMFMTMapProjection {
+	/**
+	 * Takes a snapshot of the camera state for the next frame. The following calls to toScreenLocation() will use that state.
+	 *
+	 * @return the camera position for the next frame
+	 */
+	@NonNull
+	CameraPosition updateCamera();
+
+	@NonNull
+	Point toScreenLocation(@NonNull LatLng _latLng);
+}
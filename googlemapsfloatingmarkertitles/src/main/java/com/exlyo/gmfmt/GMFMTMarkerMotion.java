@@ -0,0 +1,58 @@
+package com.exlyo.gmfmt;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Interpolation of a marker's coordinates between two position updates, over a fixed duration.
+ */
+final class GMFMTMarkerMotion {
+	private double fromLatitude;
+	private double fromLongitude;
+	private double toLatitude;
+	private double toLongitude;
+	private long startTime;
+	private long duration;
+
+	GMFMTMarkerMotion(@NonNull final LatLng _from, @NonNull final LatLng _to, final long _startTime, final long _duration) {
+		restart(_from, _to, _startTime, _duration);
+	}
+
+	/**
+	 * Starts a new interpolation, for example from the current interpolated coordinates to the coordinates of a new position update.
+	 */
+	public void restart(@NonNull final LatLng _from, @NonNull final LatLng _to, final long _startTime, final long _duration) {
+		fromLatitude = _from.latitude;
+		fromLongitude = _from.longitude;
+		toLatitude = _to.latitude;
+		toLongitude = _to.longitude;
+		// Taking the shortest way across the antimeridian
+		if (toLongitude - fromLongitude > 180D) {
+			fromLongitude += 360D;
+		} else if (fromLongitude - toLongitude > 180D) {
+			fromLongitude -= 360D;
+		}
+		startTime = _startTime;
+		duration = _duration;
+	}
+
+	public boolean isFinished(final long _time) {
+		return _time - startTime >= duration;
+	}
+
+	@NonNull
+	public LatLng getCoordinates(final long _time) {
+		if (isFinished(_time)) {
+			return new LatLng(toLatitude, toLongitude);
+		}
+		final double progress = Math.max(0D, (double) (_time - startTime) / (double) duration);
+		double longitude = fromLongitude + (toLongitude - fromLongitude) * progress;
+		if (longitude > 180D) {
+			longitude -= 360D;
+		} else if (longitude < -180D) {
+			longitude += 360D;
+		}
+		return new LatLng(fromLatitude + (toLatitude - fromLatitude) * progress, longitude);
+	}
+}
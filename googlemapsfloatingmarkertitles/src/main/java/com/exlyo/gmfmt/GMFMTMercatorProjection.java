@@ -0,0 +1,99 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.Point;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * GMFMTMapProjection computing screen locations from a camera position with the Web Mercator projection used by Google Maps, where the
+ * whole world is a 256x256 DIP square at zoom level 0. This makes it possible to place floating titles without a GoogleMap, for example
+ * to replay a recorded camera path on the JVM.
+ * <p>
+ * The camera tilt is ignored: screen locations are only exact for a camera tilt of 0.
+ */
+class GMFMTMercatorProjection implements GMFMTMapProjection {
+	private static final double WORLD_SIZE_DIP = 256;
+
+	private final float screenDensity;
+
+	@NonNull
+	private CameraPosition cameraPosition;
+	/* Screen location of the camera target, the center of the view unless the map has some padding */
+	private float targetScreenX;
+	private float targetScreenY;
+
+	/* Values derived from the camera position, computed once per camera update */
+	private double worldSize;
+	private double centerX;
+	private double centerY;
+	private double bearingCos;
+	private double bearingSin;
+
+	/**
+	 * @param _screenDensity: the number of pixels per DIP of the screen the map is displayed on
+	 */
+	GMFMTMercatorProjection(final float _screenDensity) {
+		screenDensity = _screenDensity;
+		setCamera(new CameraPosition(new LatLng(0, 0), 0, 0, 0), 1, 1);
+	}
+
+	/**
+	 * Sets the camera position and view size used for the next frames.
+	 */
+	public void setCamera(@NonNull final CameraPosition _cameraPosition, final int _viewWidth, final int _viewHeight) {
+		setCameraAndTarget(_cameraPosition, _viewWidth / 2F, _viewHeight / 2F);
+	}
+
+	/**
+	 * Sets the camera position used for the next frames, along with the screen location of the camera target, which is not the center
+	 * of the view when the map has some padding.
+	 */
+	public void setCameraAndTarget(@NonNull final CameraPosition _cameraPosition, final float _targetScreenX, final float _targetScreenY) {
+		cameraPosition = _cameraPosition;
+		targetScreenX = _targetScreenX;
+		targetScreenY = _targetScreenY;
+		worldSize = WORLD_SIZE_DIP * screenDensity * Math.pow(2, _cameraPosition.zoom);
+		centerX = projectX(_cameraPosition.target.longitude);
+		centerY = projectY(_cameraPosition.target.latitude);
+		final double bearingRadians = Math.toRadians(_cameraPosition.bearing);
+		bearingCos = Math.cos(bearingRadians);
+		bearingSin = Math.sin(bearingRadians);
+	}
+
+	@NonNull
+	@Override
+	public CameraPosition updateCamera() {
+		return cameraPosition;
+	}
+
+	@NonNull
+	@Override
+	public Point toScreenLocation(@NonNull final LatLng _latLng) {
+		double dx = projectX(_latLng.longitude) - centerX;
+		// Taking the shortest way around the world, the same way the map wraps horizontally
+		if (dx > worldSize / 2) {
+			dx -= worldSize;
+		} else if (dx < -worldSize / 2) {
+			dx += worldSize;
+		}
+		final double dy = projectY(_latLng.latitude) - centerY;
+		// The map is rotated so that the bearing direction points up
+		final double x = dx * bearingCos + dy * bearingSin;
+		final double y = -dx * bearingSin + dy * bearingCos;
+		return new Point(//
+			(int) Math.round(targetScreenX + x),//
+			(int) Math.round(targetScreenY + y)//
+		);
+	}
+
+	private double projectX(final double _longitude) {
+		return (_longitude + 180D) / 360D * worldSize;
+	}
+
+	private double projectY(final double _latitude) {
+		final double sinLatitude = Math.max(-0.9999D, Math.min(0.9999D, Math.sin(Math.toRadians(_latitude))));
+		return (0.5D - Math.log((1D + sinLatitude) / (1D - sinLatitude)) / (4D * Math.PI)) * worldSize;
+	}
+}
@@ -0,0 +1,248 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Coarse representation of the screen space taken by floating titles, exclusion zones and marker icons. The screen is divided in square
+ * cells of cellSize pixels, and each cell is represented by one bit in a long[], row by row.
+ * <p>
+ * Checking whether an area is free only reads the bits of the cells covered by the area, so the cost of a check depends on the size of
+ * the area and not on the number of titles displayed. Since the cells are coarse, two areas separated by less than a cell might be
+ * considered overlapping: the check never misses an actual overlap.
+ */
+final class GMFMTOccupancyMask {
+	private final int cellSize;
+
+	private int columnsCount;
+	private int rowsCount;
+	private int wordsPerRow;
+
+	/* Cells taken by the floating titles */
+	@NonNull
+	private long[] titleBits = new long[0];
+
+	/* Cells taken by the exclusion zones, where no floating title can be displayed */
+	@NonNull
+	private long[] exclusionBits = new long[0];
+
+	/* Cells taken by the marker icons, where no floating title of another marker can be displayed */
+	@NonNull
+	private long[] iconBits = new long[0];
+	private boolean iconsMarked;
+
+	GMFMTOccupancyMask(final int _cellSize) {
+		cellSize = Math.max(1, _cellSize);
+	}
+
+	/**
+	 * Adapts the mask to the screen size. If the size changed, the mask is cleared.
+	 *
+	 * @return true if the size changed
+	 */
+	public boolean setScreenSize(final int _width, final int _height) {
+		final int newColumnsCount = (Math.max(0, _width) + cellSize - 1) / cellSize;
+		final int newRowsCount = (Math.max(0, _height) + cellSize - 1) / cellSize;
+		if (newColumnsCount == columnsCount && newRowsCount == rowsCount) {
+			return false;
+		}
+		columnsCount = newColumnsCount;
+		rowsCount = newRowsCount;
+		wordsPerRow = (columnsCount + 63) / 64;
+		titleBits = new long[wordsPerRow * rowsCount];
+		exclusionBits = new long[wordsPerRow * rowsCount];
+		iconBits = new long[wordsPerRow * rowsCount];
+		iconsMarked = false;
+		return true;
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	public int getColumnsCount() {
+		return columnsCount;
+	}
+
+	public int getRowsCount() {
+		return rowsCount;
+	}
+
+	public void clearTitles() {
+		Arrays.fill(titleBits, 0L);
+	}
+
+	public void clearExclusions() {
+		Arrays.fill(exclusionBits, 0L);
+	}
+
+	public void clearIcons() {
+		if (iconsMarked) {
+			Arrays.fill(iconBits, 0L);
+			iconsMarked = false;
+		}
+	}
+
+	public void markTitle(@NonNull final RectF _rect) {
+		apply(titleBits, _rect, true);
+	}
+
+	public void markExclusion(@NonNull final RectF _rect) {
+		apply(exclusionBits, _rect, true);
+	}
+
+	public void markIcon(@NonNull final RectF _rect) {
+		apply(iconBits, _rect, true);
+		iconsMarked = true;
+	}
+
+	/**
+	 * @return true if no floating title takes any of the cells covered by _rect
+	 */
+	public boolean isTitleAreaFree(@NonNull final RectF _rect) {
+		return !apply(titleBits, _rect, false);
+	}
+
+	/**
+	 * @return true if an exclusion zone takes any of the cells covered by _rect
+	 */
+	public boolean isExcluded(@NonNull final RectF _rect) {
+		return apply(exclusionBits, _rect, false);
+	}
+
+	/**
+	 * Checks whether a floating title would cover marker icons. The cells covered by the icon of the title's own marker are ignored,
+	 * including the parts of other icons they cover.
+	 *
+	 * @param _ignoredRect: the icon area of the title's own marker, or null if it has none
+	 * @return true if a marker icon takes any of the cells covered by _rect and not by _ignoredRect
+	 */
+	public boolean isCoveringIcons(@NonNull final RectF _rect, @Nullable final RectF _ignoredRect) {
+		if (!iconsMarked) {
+			return false;
+		}
+		if (_ignoredRect == null) {
+			return apply(iconBits, _rect, false);
+		}
+		final int firstColumn = getFirstColumn(_rect);
+		final int lastColumn = getLastColumn(_rect);
+		final int firstRow = getFirstRow(_rect);
+		final int lastRow = getLastRow(_rect);
+		final int ignoredFirstColumn = getFirstColumn(_ignoredRect);
+		final int ignoredLastColumn = getLastColumn(_ignoredRect);
+		final int ignoredFirstRow = getFirstRow(_ignoredRect);
+		final int ignoredLastRow = getLastRow(_ignoredRect);
+		if (firstColumn > lastColumn || firstRow > lastRow) {
+			return false;
+		}
+		for (int row = firstRow; row <= lastRow; row++) {
+			final int rowOffset = row * wordsPerRow;
+			final boolean rowIgnored = row >= ignoredFirstRow && row <= ignoredLastRow;
+			for (int word = firstColumn >>> 6; word <= lastColumn >>> 6; word++) {
+				long wordMask = getWordMask(word, firstColumn, lastColumn);
+				if (rowIgnored) {
+					wordMask &= ~getWordMask(word, ignoredFirstColumn, ignoredLastColumn);
+				}
+				if ((iconBits[rowOffset + word] & wordMask) != 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if _rect1 and _rect2 cover at least one common cell, in which case marking one of them would make the other's area not
+	 * free
+	 */
+	public boolean areCoveringCommonCells(@NonNull final RectF _rect1, @NonNull final RectF _rect2) {
+		final int firstColumn = Math.max(getFirstColumn(_rect1), getFirstColumn(_rect2));
+		final int lastColumn = Math.min(getLastColumn(_rect1), getLastColumn(_rect2));
+		final int firstRow = Math.max(getFirstRow(_rect1), getFirstRow(_rect2));
+		final int lastRow = Math.min(getLastRow(_rect1), getLastRow(_rect2));
+		return firstColumn <= lastColumn && firstRow <= lastRow;
+	}
+
+	/**
+	 * @return true if all the cells covered by _rect are within the given columns and rows, both included
+	 */
+	public boolean isCoveringOnlyCells(@NonNull final RectF _rect, final int _firstColumn, final int _lastColumn, final int _firstRow,
+		final int _lastRow) {
+		final int firstColumn = getFirstColumn(_rect);
+		final int lastColumn = getLastColumn(_rect);
+		final int firstRow = getFirstRow(_rect);
+		final int lastRow = getLastRow(_rect);
+		if (firstColumn > lastColumn || firstRow > lastRow) {
+			// The rectangle doesn't cover any cell
+			return true;
+		}
+		return firstColumn >= _firstColumn && lastColumn <= _lastColumn && firstRow >= _firstRow && lastRow <= _lastRow;
+	}
+
+	// Rectangles only touching a cell's edge don't cover it, the same way RectF.intersects() works
+	private int getFirstColumn(@NonNull final RectF _rect) {
+		return Math.max(0, (int) Math.floor(_rect.left / cellSize));
+	}
+
+	private int getLastColumn(@NonNull final RectF _rect) {
+		return Math.min(columnsCount - 1, (int) Math.ceil(_rect.right / cellSize) - 1);
+	}
+
+	private int getFirstRow(@NonNull final RectF _rect) {
+		return Math.max(0, (int) Math.floor(_rect.top / cellSize));
+	}
+
+	private int getLastRow(@NonNull final RectF _rect) {
+		return Math.min(rowsCount - 1, (int) Math.ceil(_rect.bottom / cellSize) - 1);
+	}
+
+	/**
+	 * Either sets the bits of the cells covered by _rect (if _mark is true), or checks whether any of them is set (if _mark is false).
+	 * The parts of _rect outside of the screen are ignored.
+	 *
+	 * @return true if _mark is false and one of the bits is set
+	 */
+	private boolean apply(@NonNull final long[] _bits, @NonNull final RectF _rect, final boolean _mark) {
+		final int firstColumn = getFirstColumn(_rect);
+		final int lastColumn = getLastColumn(_rect);
+		final int firstRow = getFirstRow(_rect);
+		final int lastRow = getLastRow(_rect);
+		if (firstColumn > lastColumn || firstRow > lastRow) {
+			return false;
+		}
+		for (int row = firstRow; row <= lastRow; row++) {
+			final int rowOffset = row * wordsPerRow;
+			for (int word = firstColumn >>> 6; word <= lastColumn >>> 6; word++) {
+				final long wordMask = getWordMask(word, firstColumn, lastColumn);
+				if (_mark) {
+					_bits[rowOffset + word] |= wordMask;
+				} else if ((_bits[rowOffset + word] & wordMask) != 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the bits of the word representing the columns between _firstColumn and _lastColumn, both included
+	 */
+	private static long getWordMask(final int _word, final int _firstColumn, final int _lastColumn) {
+		final int firstWord = _firstColumn >>> 6;
+		final int lastWord = _lastColumn >>> 6;
+		if (_firstColumn > _lastColumn || _word < firstWord || _word > lastWord) {
+			return 0L;
+		}
+		long res = -1L;
+		if (_word == firstWord) {
+			res &= -1L << (_firstColumn & 63);
+		}
+		if (_word == lastWord) {
+			res &= -1L >>> (63 - (_lastColumn & 63));
+		}
+		return res;
+	}
+}
@@ -0,0 +1,423 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.Point;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextPaint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Places the floating titles of new markers on several threads. The screen is divided in tiles aligned on the cells of the occupancy
+ * mask, and each candidate marker is handled by the tile containing its screen location. Each tile measures the titles of its candidates
+ * and finds an anchor for them on its own thread, checking conflicts against the occupancy mask (which is not modified while the tiles
+ * are placed) and against the titles placed earlier in the same tile.
+ * <p>
+ * Titles fully inside their tile can't be in conflict with titles placed in other tiles, but titles crossing a tile border can, so the
+ * caller needs to check these again against the other placed titles. Each tile handles its candidates in order and only depends on the
+ * state at the start of the placement, so the result doesn't depend on the threads scheduling.
+ * <p>
+ * Only the placement runs on the threads: the candidates, their screen locations and the information of their MarkerInfo are gathered by
+ * the drawing thread before.
+ */
+final class GMFMTParallelPlacer {
+	/* Number of tiles per thread, more tiles than threads balance the work when the markers are not evenly spread on the screen */
+	private static final int TILES_PER_THREAD = 2;
+	/* Time after which idle threads stop, so a placer that wasn't shut down doesn't keep its threads forever */
+	private static final long IDLE_THREAD_KEEP_ALIVE_TIME = 10;
+
+	@NonNull
+	private final FloatingMarkerTitlesOverlay fmto;
+	/* The overlay's occupancy mask, only read while placing */
+	@NonNull
+	private final GMFMTOccupancyMask occupancyMask;
+	@NonNull
+	private final ThreadPoolExecutor executorService;
+
+	private final int tileColumnsCount;
+	private final int tileRowsCount;
+	@NonNull
+	private final List<TileTask> tileTasks = new ArrayList<>();
+
+	/* Candidates, in order of check */
+	private int candidatesCount;
+	@NonNull
+	private MarkerInfo[] candidates = new MarkerInfo[0];
+	@NonNull
+	private String[] candidateTitles = new String[0];
+	@NonNull
+	private boolean[] candidateBoldTexts = new boolean[0];
+	@NonNull
+	private float[] candidateZIndexes = new float[0];
+	@NonNull
+	private int[] candidateScreenX = new int[0];
+	@NonNull
+	private int[] candidateScreenY = new int[0];
+	/* Screen area of the candidate's own marker icon, only set if candidateHasIcon is true */
+	@NonNull
+	private boolean[] candidateHasIcon = new boolean[0];
+	@NonNull
+	private RectF[] candidateIconAreas = new RectF[0];
+
+	/* Placement results of the candidates, the anchor is null if the title couldn't be placed */
+	@NonNull
+	private MarkerTitleAnchor[] placedAnchors = new MarkerTitleAnchor[0];
+	@NonNull
+	private RectF[] placedAreas = new RectF[0];
+	@NonNull
+	private boolean[] placedAcrossTileBorder = new boolean[0];
+	@NonNull
+	private Point[] textSizes = new Point[0];
+
+	/* Candidates of each tile: the candidates of tile i are tileCandidates[tileStarts[i]..tileStarts[i+1]), in order of check */
+	@NonNull
+	private final int[] tileStarts;
+	@NonNull
+	private int[] tileCandidates = new int[0];
+	/* Reusable buffers to assign the candidates to the tiles */
+	@NonNull
+	private int[] candidateTiles = new int[0];
+	@NonNull
+	private final int[] tileFillCounts;
+
+	/* Snapshot of the displayed titles for the current placement, taken by the drawing thread */
+	private int displayedTitlesCount;
+	@NonNull
+	private RectF[] displayedAreas = new RectF[0];
+	@NonNull
+	private float[] displayedZIndexes = new float[0];
+
+	/* Placement settings for the current placement */
+	@NonNull
+	private MarkerTitleAnchor[] titleAnchors = {};
+	private float textPaddingToMarker;
+	private float minZIndex;
+	private int tileCellsWidth;
+	private int tileCellsHeight;
+
+	GMFMTParallelPlacer(@NonNull final FloatingMarkerTitlesOverlay _fmto, @NonNull final GMFMTOccupancyMask _occupancyMask,
+		final int _threadsCount) {
+		fmto = _fmto;
+		occupancyMask = _occupancyMask;
+		final int threadsCount = Math.max(1, _threadsCount);
+		executorService = new ThreadPoolExecutor(//
+			threadsCount,//
+			threadsCount,//
+			IDLE_THREAD_KEEP_ALIVE_TIME,//
+			TimeUnit.SECONDS,//
+			new LinkedBlockingQueue<Runnable>(),//
+			new PlacementThreadFactory()//
+		);
+		executorService.allowCoreThreadTimeOut(true);
+		final int tilesCount = threadsCount * TILES_PER_THREAD;
+		tileColumnsCount = (int) Math.ceil(Math.sqrt(tilesCount));
+		tileRowsCount = (tilesCount + tileColumnsCount - 1) / tileColumnsCount;
+		for (int i = 0; i < tileColumnsCount * tileRowsCount; i++) {
+			tileTasks.add(new TileTask(i));
+		}
+		tileStarts = new int[tileTasks.size() + 1];
+		tileFillCounts = new int[tileTasks.size()];
+	}
+
+	/**
+	 * Stops the threads, the placer can't be used afterwards.
+	 */
+	public void shutdown() {
+		executorService.shutdown();
+	}
+
+	public void clearCandidates() {
+		Arrays.fill(candidates, 0, candidatesCount, null);
+		Arrays.fill(candidateTitles, 0, candidatesCount, null);
+		candidatesCount = 0;
+	}
+
+	/**
+	 * Adds a marker to place, reading the information of the MarkerInfo on the calling thread.
+	 *
+	 * @param _iconArea: screen area of the marker's icon, or null if it has no icon footprint
+	 */
+	public void addCandidate(@NonNull final MarkerInfo _markerInfo, @NonNull final Point _screenLocation, @Nullable final RectF _iconArea) {
+		if (candidatesCount == candidates.length) {
+			final int capacity = Math.max(16, candidatesCount * 2);
+			candidates = Arrays.copyOf(candidates, capacity);
+			candidateTitles = Arrays.copyOf(candidateTitles, capacity);
+			candidateBoldTexts = Arrays.copyOf(candidateBoldTexts, capacity);
+			candidateZIndexes = Arrays.copyOf(candidateZIndexes, capacity);
+			candidateScreenX = Arrays.copyOf(candidateScreenX, capacity);
+			candidateScreenY = Arrays.copyOf(candidateScreenY, capacity);
+			candidateHasIcon = Arrays.copyOf(candidateHasIcon, capacity);
+			candidateIconAreas = Arrays.copyOf(candidateIconAreas, capacity);
+			placedAnchors = Arrays.copyOf(placedAnchors, capacity);
+			placedAcrossTileBorder = Arrays.copyOf(placedAcrossTileBorder, capacity);
+			textSizes = Arrays.copyOf(textSizes, capacity);
+			placedAreas = Arrays.copyOf(placedAreas, capacity);
+			for (int i = candidatesCount; i < capacity; i++) {
+				placedAreas[i] = new RectF();
+				candidateIconAreas[i] = new RectF();
+			}
+		}
+		candidates[candidatesCount] = _markerInfo;
+		candidateTitles[candidatesCount] = _markerInfo.getTitle();
+		candidateBoldTexts[candidatesCount] = _markerInfo.isBoldText();
+		candidateZIndexes[candidatesCount] = _markerInfo.getZIndex();
+		candidateScreenX[candidatesCount] = _screenLocation.x;
+		candidateScreenY[candidatesCount] = _screenLocation.y;
+		candidateHasIcon[candidatesCount] = _iconArea != null;
+		if (_iconArea != null) {
+			candidateIconAreas[candidatesCount].set(_iconArea);
+		}
+		candidatesCount++;
+	}
+
+	public int getCandidatesCount() {
+		return candidatesCount;
+	}
+
+	@NonNull
+	public MarkerInfo getCandidate(final int _index) {
+		return candidates[_index];
+	}
+
+	/**
+	 * @return the anchor found for the candidate's title, or null if it's in conflict with display for all the anchors
+	 */
+	@Nullable
+	public MarkerTitleAnchor getPlacedAnchor(final int _index) {
+		return placedAnchors[_index];
+	}
+
+	@NonNull
+	public RectF getPlacedArea(final int _index) {
+		return placedAreas[_index];
+	}
+
+	/**
+	 * @return true if the candidate's title covers cells of other tiles than its own, and needs to be checked again against their titles
+	 */
+	public boolean isPlacedAcrossTileBorder(final int _index) {
+		return placedAcrossTileBorder[_index];
+	}
+
+	@NonNull
+	public Point getTextSize(final int _index) {
+		return textSizes[_index];
+	}
+
+	/**
+	 * Places the candidates on the threads, and waits for the result. The occupancy mask and the displayed titles must not be modified
+	 * until this method returns.
+	 *
+	 * @param _minZIndex: the minimum z-index among the displayed floating titles
+	 */
+	public void placeCandidates(@NonNull final MarkerTitleAnchor[] _titleAnchors, final float _textPaddingToMarker, final float _minZIndex,
+		@NonNull final Map<MarkerInfo, RectF> _displayedMarkerIdToScreenRect) {
+		titleAnchors = _titleAnchors;
+		textPaddingToMarker = _textPaddingToMarker;
+		minZIndex = _minZIndex;
+		// Tiles are aligned on the cells, so titles covering only the cells of their tile can't cover the cells of another tile
+		tileCellsWidth = Math.max(1, (occupancyMask.getColumnsCount() + tileColumnsCount - 1) / tileColumnsCount);
+		tileCellsHeight = Math.max(1, (occupancyMask.getRowsCount() + tileRowsCount - 1) / tileRowsCount);
+		takeDisplayedTitlesSnapshot(_displayedMarkerIdToScreenRect);
+		assignCandidatesToTiles();
+		for (final TileTask tileTask : tileTasks) {
+			tileTask.prepare();
+		}
+
+		try {
+			final List<Future<Void>> results = executorService.invokeAll(tileTasks);
+			for (final Future<Void> result : results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Arrays.fill(placedAnchors, 0, candidatesCount, null);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		Arrays.fill(displayedAreas, 0, displayedTitlesCount, null);
+	}
+
+	private void takeDisplayedTitlesSnapshot(@NonNull final Map<MarkerInfo, RectF> _displayedMarkerIdToScreenRect) {
+		displayedTitlesCount = _displayedMarkerIdToScreenRect.size();
+		if (displayedAreas.length < displayedTitlesCount) {
+			displayedAreas = new RectF[displayedTitlesCount];
+			displayedZIndexes = new float[displayedTitlesCount];
+		}
+		int i = 0;
+		for (final Map.Entry<MarkerInfo, RectF> entry : _displayedMarkerIdToScreenRect.entrySet()) {
+			displayedAreas[i] = entry.getValue();
+			displayedZIndexes[i] = entry.getKey().getZIndex();
+			i++;
+		}
+	}
+
+	private void assignCandidatesToTiles() {
+		final int cellSize = occupancyMask.getCellSize();
+		Arrays.fill(tileStarts, 0);
+		if (tileCandidates.length < candidatesCount) {
+			tileCandidates = new int[candidates.length];
+			candidateTiles = new int[candidates.length];
+		}
+		for (int i = 0; i < candidatesCount; i++) {
+			final int column = Math.max(0, Math.min(tileColumnsCount - 1, candidateScreenX[i] / cellSize / tileCellsWidth));
+			final int row = Math.max(0, Math.min(tileRowsCount - 1, candidateScreenY[i] / cellSize / tileCellsHeight));
+			candidateTiles[i] = row * tileColumnsCount + column;
+			tileStarts[candidateTiles[i] + 1]++;
+		}
+		for (int i = 0; i < tileTasks.size(); i++) {
+			tileStarts[i + 1] += tileStarts[i];
+		}
+		Arrays.fill(tileFillCounts, 0);
+		for (int i = 0; i < candidatesCount; i++) {
+			final int tile = candidateTiles[i];
+			tileCandidates[tileStarts[tile] + tileFillCounts[tile]] = i;
+			tileFillCounts[tile]++;
+		}
+	}
+
+	/**
+	 * Static so the threads don't hold a reference to the placer, and through it to the overlay and its Context.
+	 */
+	private static final class PlacementThreadFactory implements ThreadFactory {
+		@Override
+		public Thread newThread(@NonNull final Runnable _runnable) {
+			final Thread res = new Thread(_runnable, "FloatingMarkerTitlesPlacement");
+			res.setDaemon(true);
+			return res;
+		}
+	}
+
+	/**
+	 * Places the candidates of one tile, on one of the threads. Each tile has its own text paints, since measuring text is not thread-safe.
+	 */
+	private final class TileTask implements Callable<Void> {
+		private final int tileIndex;
+		@NonNull
+		private final GMFMTGlyphAdvanceCache regularGlyphAdvanceCache;
+		@NonNull
+		private final GMFMTGlyphAdvanceCache boldGlyphAdvanceCache;
+		@NonNull
+		private final int[] textMetricsBuffer = new int[3];
+		@Nullable
+		private GMFMTTextMetricsDiskCache textMetricsDiskCache;
+		private int maxTextWidth;
+		private int maxTextHeight;
+
+		private TileTask(final int _tileIndex) {
+			tileIndex = _tileIndex;
+			regularGlyphAdvanceCache = new GMFMTGlyphAdvanceCache(new TextPaint(fmto.regularTextPaint));
+			boldGlyphAdvanceCache = new GMFMTGlyphAdvanceCache(new TextPaint(fmto.boldTextPaint));
+		}
+
+		/**
+		 * Copies the text settings of the overlay, on the drawing thread.
+		 */
+		private void prepare() {
+			regularGlyphAdvanceCache.getTextPaint().setTextSize(fmto.regularTextPaint.getTextSize());
+			boldGlyphAdvanceCache.getTextPaint().setTextSize(fmto.boldTextPaint.getTextSize());
+			textMetricsDiskCache = fmto.textMetricsDiskCache;
+			maxTextWidth = (int) fmto.maxTextWidth;
+			maxTextHeight = (int) fmto.maxTextHeight;
+		}
+
+		@Override
+		public Void call() {
+			final int firstColumn = (tileIndex % tileColumnsCount) * tileCellsWidth;
+			final int firstRow = (tileIndex / tileColumnsCount) * tileCellsHeight;
+			final int lastColumn = firstColumn + tileCellsWidth - 1;
+			final int lastRow = firstRow + tileCellsHeight - 1;
+			for (int i = tileStarts[tileIndex]; i < tileStarts[tileIndex + 1]; i++) {
+				final int candidate = tileCandidates[i];
+				final boolean boldText = candidateBoldTexts[candidate];
+				final Point textSize = GMFMTGeometryCache.computeTextSize(//
+					boldText ? boldGlyphAdvanceCache : regularGlyphAdvanceCache,//
+					textMetricsDiskCache,//
+					textMetricsBuffer,//
+					candidateTitles[candidate],//
+					boldText,//
+					maxTextWidth,//
+					maxTextHeight//
+				);
+				textSizes[candidate] = textSize;
+				final RectF area = placedAreas[candidate];
+				final MarkerTitleAnchor anchor = findAnchorWithoutConflict(candidate, textSize, i, area);
+				placedAnchors[candidate] = anchor;
+				placedAcrossTileBorder[candidate] = anchor != null && !occupancyMask.isCoveringOnlyCells(//
+					area,//
+					firstColumn,//
+					lastColumn,//
+					firstRow,//
+					lastRow//
+				);
+			}
+			return null;
+		}
+
+		/**
+		 * Same as FloatingMarkerTitlesOverlay.findAnchorWithoutConflict(), also checking the titles placed earlier in the tile since the
+		 * occupancy mask is not updated while placing.
+		 *
+		 * @param _tileCandidateIndex: position of the candidate in tileCandidates
+		 */
+		@Nullable
+		private MarkerTitleAnchor findAnchorWithoutConflict(final int _candidate, @NonNull final Point _textSize,
+			final int _tileCandidateIndex, @NonNull final RectF _res) {
+			final boolean canTakePriority = candidateZIndexes[_candidate] > minZIndex;
+			for (final MarkerTitleAnchor anchor : titleAnchors) {
+				anchor.computeRect(//
+					_res,//
+					candidateScreenX[_candidate],//
+					candidateScreenY[_candidate],//
+					_textSize.x,//
+					_textSize.y,//
+					textPaddingToMarker//
+				);
+				if (occupancyMask.isExcluded(_res)) {
+					continue;
+				}
+				if (occupancyMask.isCoveringIcons(_res, candidateHasIcon[_candidate] ? candidateIconAreas[_candidate] : null)) {
+					continue;
+				}
+				if (occupancyMask.isTitleAreaFree(_res) && !isInConflictWithTilePlacedTitles(_tileCandidateIndex, _res)) {
+					return anchor;
+				}
+				if (canTakePriority && !isInConflictWithDisplayedTitles(_candidate, _res)) {
+					return anchor;
+				}
+			}
+			return null;
+		}
+
+		private boolean isInConflictWithTilePlacedTitles(final int _tileCandidateIndex, @NonNull final RectF _area) {
+			for (int i = tileStarts[tileIndex]; i < _tileCandidateIndex; i++) {
+				final int candidate = tileCandidates[i];
+				if (placedAnchors[candidate] != null && occupancyMask.areCoveringCommonCells(placedAreas[candidate], _area)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean isInConflictWithDisplayedTitles(final int _candidate, @NonNull final RectF _area) {
+			for (int i = 0; i < displayedTitlesCount; i++) {
+				// If the candidate has equal or lower z-index than an overlapping displayed title, it's in conflict with display
+				if (RectF.intersects(displayedAreas[i], _area) && candidateZIndexes[_candidate] <= displayedZIndexes[i]) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.exlyo.gmfmt;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent cache of the measured size and truncation of floating titles, stored in a memory-mapped file so the titles measured in a
+ * previous session don't need to be measured again after the app starts.
+ * <p>
+ * The file is a fixed-size hash table: a header followed by maxEntriesCount entries of ENTRY_SIZE bytes. Each entry holds a 64 bits key
+ * computed from the title and the parameters affecting its measurement (see computeKey()), the measured width and height, and the
+ * truncation end of the title. Colliding keys are stored in the next entries, up to MAX_PROBES entries away, after which the oldest
+ * position is overwritten, so the file never grows.
+ * <p>
+ * The file is opened and loaded in memory on a background thread started by openInBackground(), and the cache acts as empty until then,
+ * so the drawing thread never accesses the disk. If the file can't be opened or mapped, the cache stays empty and everything gets
+ * measured normally.
+ */
+final class GMFMTTextMetricsDiskCache {
+	/* Value of the truncation end when it hasn't been computed yet */
+	static final int TRUNCATION_UNKNOWN = Integer.MIN_VALUE;
+	/* Value of the truncation end when the title doesn't need to be truncated */
+	static final int TRUNCATION_NONE = -1;
+	/* Value of the truncation end when the title can't be displayed at all */
+	static final int TRUNCATION_NOT_DISPLAYABLE = -2;
+
+	private static final int FILE_FORMAT_MAGIC = 0x474d544d;
+	private static final int FILE_FORMAT_VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	/* key (long), width (int), height (int), truncation end (int), reserved (int) */
+	private static final int ENTRY_SIZE = 24;
+	private static final int MAX_PROBES = 8;
+
+	@NonNull
+	private final File file;
+	private final int maxEntriesCount;
+
+	/* Null until the file is opened */
+	@Nullable
+	private MappedByteBuffer buffer;
+
+	GMFMTTextMetricsDiskCache(@NonNull final File _file, final int _maxEntriesCount) {
+		file = _file;
+		maxEntriesCount = Math.max(1, _maxEntriesCount);
+	}
+
+	/**
+	 * Starts opening the file on a background thread.
+	 */
+	void openInBackground() {
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				MappedByteBuffer openedBuffer;
+				try {
+					openedBuffer = open();
+					// Reading the whole file now, so the drawing thread doesn't wait for the disk on its first accesses
+					openedBuffer.load();
+				} catch (IOException | RuntimeException e) {
+					openedBuffer = null;
+				}
+				synchronized (GMFMTTextMetricsDiskCache.this) {
+					buffer = openedBuffer;
+				}
+			}
+		}, "FloatingMarkerTitlesMetricsCache");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Computes the key of a title measurement. The key is never 0, which marks empty entries.
+	 */
+	static long computeKey(@NonNull final String _title, final boolean _boldText, final float _textSize, final int _maxWidth,
+		final int _maxHeight) {
+		// FNV-1a hash of the title
+		long hash = 0xcbf29ce484222325L;
+		final int length = _title.length();
+		for (int i = 0; i < length; i++) {
+			hash ^= _title.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash = mix(hash ^ (_boldText ? 1L : 2L));
+		hash = mix(hash ^ Float.floatToIntBits(_textSize));
+		hash = mix(hash ^ (((long) _maxWidth << 32) | (_maxHeight & 0xffffffffL)));
+		return hash == 0 ? 1 : hash;
+	}
+
+	private static long mix(long _value) {
+		_value ^= _value >>> 33;
+		_value *= 0xff51afd7ed558ccdL;
+		_value ^= _value >>> 33;
+		return _value;
+	}
+
+	/**
+	 * @param _res: filled with the width, height and truncation end of the entry, if found
+	 * @return true if an entry was found for the key
+	 */
+	public synchronized boolean read(final long _key, @NonNull final int[] _res) {
+		final ByteBuffer b = getBuffer();
+		if (b == null) {
+			return false;
+		}
+		final int position = findEntryPosition(b, _key);
+		if (position < 0 || b.getLong(position) != _key) {
+			return false;
+		}
+		_res[0] = b.getInt(position + 8);
+		_res[1] = b.getInt(position + 12);
+		_res[2] = b.getInt(position + 16);
+		return true;
+	}
+
+	/**
+	 * Stores the measured size of a title. The truncation end is kept if the entry already exists.
+	 */
+	public synchronized void writeSize(final long _key, final int _width, final int _height) {
+		final ByteBuffer b = getBuffer();
+		if (b == null) {
+			return;
+		}
+		int position = findEntryPosition(b, _key);
+		if (position < 0) {
+			position = getHomePosition(_key);
+		}
+		if (b.getLong(position) != _key) {
+			b.putLong(position, _key);
+			b.putInt(position + 16, TRUNCATION_UNKNOWN);
+		}
+		b.putInt(position + 8, _width);
+		b.putInt(position + 12, _height);
+	}
+
+	/**
+	 * Stores the truncation end of a title whose size was stored with writeSize().
+	 */
+	public synchronized void writeTruncation(final long _key, final int _truncationEnd) {
+		final ByteBuffer b = getBuffer();
+		if (b == null) {
+			return;
+		}
+		final int position = findEntryPosition(b, _key);
+		if (position >= 0 && b.getLong(position) == _key) {
+			b.putInt(position + 16, _truncationEnd);
+		}
+	}
+
+	/**
+	 * @return the position of the entry with the key, or of the first empty entry where it could be stored, or -1 if none
+	 */
+	private int findEntryPosition(@NonNull final ByteBuffer _buffer, final long _key) {
+		final int homeIndex = (int) ((_key >>> 1) % maxEntriesCount);
+		for (int i = 0; i < MAX_PROBES; i++) {
+			final int position = HEADER_SIZE + ((homeIndex + i) % maxEntriesCount) * ENTRY_SIZE;
+			final long key = _buffer.getLong(position);
+			if (key == _key || key == 0) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	private int getHomePosition(final long _key) {
+		return HEADER_SIZE + (int) ((_key >>> 1) % maxEntriesCount) * ENTRY_SIZE;
+	}
+
+	@Nullable
+	private ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	@NonNull
+	private MappedByteBuffer open() throws IOException {
+		final long fileSize = HEADER_SIZE + (long) maxEntriesCount * ENTRY_SIZE;
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			final boolean validFile = randomAccessFile.length() == fileSize//
+				&& randomAccessFile.readInt() == FILE_FORMAT_MAGIC//
+				&& randomAccessFile.readInt() == FILE_FORMAT_VERSION//
+				&& randomAccessFile.readInt() == maxEntriesCount;
+			if (!validFile) {
+				// Resetting the file content to empty entries
+				randomAccessFile.setLength(0);
+				randomAccessFile.setLength(fileSize);
+				randomAccessFile.seek(0);
+				randomAccessFile.writeInt(FILE_FORMAT_MAGIC);
+				randomAccessFile.writeInt(FILE_FORMAT_VERSION);
+				randomAccessFile.writeInt(maxEntriesCount);
+			}
+			// The mapping stays valid after the file is closed
+			return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+}
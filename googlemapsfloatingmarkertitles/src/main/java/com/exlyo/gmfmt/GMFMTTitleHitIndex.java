@@ -0,0 +1,187 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Snapshot of the floating titles drawn in a frame, indexed to find the titles at a screen location without scanning all of them. Like
+ * GMFMTOccupancyMask, the screen is divided in square cells, and each cell lists the titles covering it.
+ * <p>
+ * A new snapshot is created by the drawing thread after each frame, so it can be read from any thread while the next frame is prepared.
+ * Creating it only copies the drawn titles: the cells are built on the first query, so frames whose titles are never queried don't pay
+ * for the index.
+ */
+final class GMFMTTitleHitIndex {
+	@NonNull
+	static final GMFMTTitleHitIndex EMPTY = new GMFMTTitleHitIndex(new MarkerInfo[0], new RectF[0], 0, 0, 0, 1);
+
+	private final int cellSize;
+	private final int columnsCount;
+	private final int rowsCount;
+	private final int count;
+
+	/* Titles in drawing order, the last ones are drawn on top */
+	@NonNull
+	private final MarkerInfo[] markers;
+	/* Screen area of each title: left, top, right, bottom */
+	@NonNull
+	private final float[] areas;
+
+	/* Titles covering each cell, row by row: the indexes of the titles covering cell i are cellEntries[cellStarts[i]..cellStarts[i+1]),
+	null until the first query */
+	@Nullable
+	private int[] cellStarts;
+	@Nullable
+	private int[] cellEntries;
+
+	/**
+	 * @param _markers:      the drawn titles, in drawing order
+	 * @param _areas:        the screen area of each drawn title
+	 * @param _count:        the number of drawn titles, the arrays can be longer
+	 * @param _screenWidth:  width of the screen, titles outside of the screen are only indexed for their visible part
+	 * @param _screenHeight: height of the screen
+	 * @param _cellSize:     size of the cells in pixels
+	 */
+	GMFMTTitleHitIndex(@NonNull final MarkerInfo[] _markers, @NonNull final RectF[] _areas, final int _count, final int _screenWidth,
+		final int _screenHeight, final int _cellSize) {
+		cellSize = Math.max(1, _cellSize);
+		columnsCount = (Math.max(0, _screenWidth) + cellSize - 1) / cellSize;
+		rowsCount = (Math.max(0, _screenHeight) + cellSize - 1) / cellSize;
+		count = _count;
+		markers = new MarkerInfo[_count];
+		areas = new float[_count * 4];
+		for (int i = 0; i < _count; i++) {
+			final RectF area = _areas[i];
+			markers[i] = _markers[i];
+			areas[i * 4] = area.left;
+			areas[i * 4 + 1] = area.top;
+			areas[i * 4 + 2] = area.right;
+			areas[i * 4 + 3] = area.bottom;
+		}
+	}
+
+	/**
+	 * Builds the cells if not done yet, must be called with the lock held.
+	 */
+	private void buildCells() {
+		if (cellStarts != null) {
+			return;
+		}
+		// First counting the titles in each cell, then filling the cells
+		final int cellsCount = columnsCount * rowsCount;
+		final int[] starts = new int[cellsCount + 1];
+		for (int i = 0; i < count; i++) {
+			final int firstColumn = getFirstColumn(areas[i * 4]);
+			final int lastColumn = getLastColumn(areas[i * 4 + 2]);
+			final int firstRow = getFirstRow(areas[i * 4 + 1]);
+			final int lastRow = getLastRow(areas[i * 4 + 3]);
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int column = firstColumn; column <= lastColumn; column++) {
+					starts[row * columnsCount + column + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < cellsCount; i++) {
+			starts[i + 1] += starts[i];
+		}
+		final int[] entries = new int[starts[cellsCount]];
+		final int[] cellFillCounts = new int[cellsCount];
+		for (int i = 0; i < count; i++) {
+			final int firstColumn = getFirstColumn(areas[i * 4]);
+			final int lastColumn = getLastColumn(areas[i * 4 + 2]);
+			final int firstRow = getFirstRow(areas[i * 4 + 1]);
+			final int lastRow = getLastRow(areas[i * 4 + 3]);
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int column = firstColumn; column <= lastColumn; column++) {
+					final int cell = row * columnsCount + column;
+					entries[starts[cell] + cellFillCounts[cell]] = i;
+					cellFillCounts[cell]++;
+				}
+			}
+		}
+		cellStarts = starts;
+		cellEntries = entries;
+	}
+
+	/**
+	 * @return the title containing the location, the one drawn on top if several, or null if none
+	 */
+	@Nullable
+	public synchronized MarkerInfo findAt(final float _x, final float _y) {
+		if (count == 0 || _x < 0 || _y < 0) {
+			return null;
+		}
+		final int column = (int) (_x / cellSize);
+		final int row = (int) (_y / cellSize);
+		if (column >= columnsCount || row >= rowsCount) {
+			return null;
+		}
+		buildCells();
+		final int[] starts = cellStarts;
+		final int[] entries = cellEntries;
+		final int cell = row * columnsCount + column;
+		// Titles are listed in drawing order in each cell, so the last matching title is the one drawn on top
+		for (int i = starts[cell + 1] - 1; i >= starts[cell]; i--) {
+			final int index = entries[i];
+			if (_x >= areas[index * 4] && _x < areas[index * 4 + 2] && _y >= areas[index * 4 + 1] && _y < areas[index * 4 + 3]) {
+				return markers[index];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the titles intersecting the rectangle to _res, in drawing order within each cell.
+	 */
+	public synchronized void findIn(@NonNull final RectF _rect, @NonNull final List<MarkerInfo> _res) {
+		if (count == 0) {
+			return;
+		}
+		buildCells();
+		final int[] starts = cellStarts;
+		final int[] entries = cellEntries;
+		final int firstColumn = getFirstColumn(_rect.left);
+		final int lastColumn = getLastColumn(_rect.right);
+		final int firstRow = getFirstRow(_rect.top);
+		final int lastRow = getLastRow(_rect.bottom);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				final int cell = row * columnsCount + column;
+				for (int i = starts[cell]; i < starts[cell + 1]; i++) {
+					final int index = entries[i];
+					final float left = areas[index * 4];
+					final float top = areas[index * 4 + 1];
+					final float right = areas[index * 4 + 2];
+					final float bottom = areas[index * 4 + 3];
+					// A title covering several cells of the rectangle is only reported in the first of them
+					if (column != Math.max(firstColumn, getFirstColumn(left)) || row != Math.max(firstRow, getFirstRow(top))) {
+						continue;
+					}
+					if (left < _rect.right && _rect.left < right && top < _rect.bottom && _rect.top < bottom) {
+						_res.add(markers[index]);
+					}
+				}
+			}
+		}
+	}
+
+	// Rectangles only touching a cell's edge don't cover it, the same way RectF.intersects() works
+	private int getFirstColumn(final float _left) {
+		return Math.max(0, (int) Math.floor(_left / cellSize));
+	}
+
+	private int getLastColumn(final float _right) {
+		return Math.min(columnsCount - 1, (int) Math.ceil(_right / cellSize) - 1);
+	}
+
+	private int getFirstRow(final float _top) {
+		return Math.max(0, (int) Math.floor(_top / cellSize));
+	}
+
+	private int getLastRow(final float _bottom) {
+		return Math.min(rowsCount - 1, (int) Math.ceil(_bottom / cellSize) - 1);
+	}
+}
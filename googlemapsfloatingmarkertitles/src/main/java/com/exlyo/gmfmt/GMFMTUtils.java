@@ -17,6 +17,10 @@ import android.util.TypedValue;
 final class GMFMTUtils {
 	private static final float MIN_LUMINANCE_TO_LIGHT_TINTING = 0.75F;
 
+	/* Margin in pixels below the available width for text measured with glyph advances to be considered fitting on a single line, since
+	the actual width can differ slightly because of kerning */
+	private static final float SINGLE_LINE_FAST_PATH_WIDTH_MARGIN = 2F;
+
 	private static float colorLuminance(@ColorInt int _color) {
 		final float red = Color.red(_color) / 255F;
 		final float green = Color.green(_color) / 255F;
@@ -45,19 +49,65 @@ final class GMFMTUtils {
 	}
 
 	/**
-	 * Computes the screen space (width and height) occupied by some text with a given text paint, if the text needed to fit in a given
-	 * width/height with ellipsis
+	 * Determines whether some text is guaranteed to fit on a single line of the given width, using only the cached glyph advances.
+	 *
+	 * @return the width of the text, or -1 if the text might need several lines or can't be measured with the cache
 	 */
-	public static Point measureMultiLineEllipsizedText(@NonNull final TextPaint _textPaint, final int _maxWidth, final int _maxHeight,
+	private static float measureFittingSingleLine(@NonNull final GMFMTGlyphAdvanceCache _glyphAdvanceCache, final float _maxWidth,
 		@NonNull final String _text) {
+		final float width = _glyphAdvanceCache.measureSingleLine(_text);
+		if (width < 0 || width > _maxWidth - SINGLE_LINE_FAST_PATH_WIDTH_MARGIN) {
+			return -1;
+		}
+		return width;
+	}
+
+	/**
+	 * Same as measureFittingSingleLineText(), without allocating the size.
+	 *
+	 * @return true if the text is guaranteed to fit on a single line of the given width according to the cached glyph advances
+	 */
+	public static boolean isFittingSingleLine(@NonNull final GMFMTGlyphAdvanceCache _glyphAdvanceCache, final int _maxWidth,
+		@NonNull final String _text) {
+		return measureFittingSingleLine(_glyphAdvanceCache, _maxWidth, _text) >= 0;
+	}
+
+	/**
+	 * Computes the screen space (width and height) occupied by some text, only if it's guaranteed to fit on a single line of the given
+	 * width according to the cached glyph advances.
+	 *
+	 * @return the size of the text, or null if the text might need several lines or can't be measured with the cache
+	 */
+	@Nullable
+	public static Point measureFittingSingleLineText(@NonNull final GMFMTGlyphAdvanceCache _glyphAdvanceCache, final int _maxWidth,
+		@NonNull final String _text) {
+		final float singleLineWidth = measureFittingSingleLine(_glyphAdvanceCache, _maxWidth, _text);
+		if (singleLineWidth < 0) {
+			return null;
+		}
+		return new Point((int) Math.ceil(singleLineWidth), _glyphAdvanceCache.getLineHeight());
+	}
+
+	/**
+	 * Computes the screen space (width and height) occupied by some text with a given text paint, if the text needed to fit in a given
+	 * width/height with ellipsis. Text fitting on a single line is measured with the cached glyph advances, and a StaticLayout is only
+	 * created for text needing several lines.
+	 */
+	public static Point measureMultiLineEllipsizedText(@NonNull final GMFMTGlyphAdvanceCache _glyphAdvanceCache, final int _maxWidth,
+		final int _maxHeight, @NonNull final String _text) {
+		final Point singleLineSize = measureFittingSingleLineText(_glyphAdvanceCache, _maxWidth, _text);
+		if (singleLineSize != null) {
+			return singleLineSize;
+		}
+		final TextPaint textPaint = _glyphAdvanceCache.getTextPaint();
 		final StaticLayout measuringTextLayout =
-			new StaticLayout(_text, _textPaint, _maxWidth, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+			new StaticLayout(_text, textPaint, _maxWidth, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
 		final int resWidth;
 		final int resHeight;
 		if (measuringTextLayout.getLineCount() == 1) {
 			final Rect lineBounds = new Rect();
 			measuringTextLayout.getLineBounds(0, lineBounds);
-			resWidth = (int) Math.ceil(_textPaint.measureText(_text));
+			resWidth = (int) Math.ceil(textPaint.measureText(_text));
 			resHeight = measuringTextLayout.getHeight();
 		} else {
 			resWidth = measuringTextLayout.getWidth();
@@ -66,10 +116,18 @@ final class GMFMTUtils {
 		return new Point(resWidth, resHeight);
 	}
 
-	public static void drawMultiLineText(@NonNull final Canvas _canvas, @NonNull final TextPaint _textPaint, final float _x, final float _y,
-		final float _width, @NonNull final String _text) {
+	public static void drawMultiLineText(@NonNull final Canvas _canvas, @NonNull final GMFMTGlyphAdvanceCache _glyphAdvanceCache,
+		final float _x, final float _y, final float _width, @NonNull final String _text) {
+		final TextPaint textPaint = _glyphAdvanceCache.getTextPaint();
+		final float singleLineWidth = _glyphAdvanceCache.measureSingleLine(_text);
+		if (singleLineWidth >= 0 && singleLineWidth <= Math.abs(_width)) {
+			// The width comes from measureMultiLineEllipsizedText(), so this is text it measured as a single line
+			// Same position as the first line of a StaticLayout: the top of the line is at _y
+			_canvas.drawText(_text, _x, _y - _glyphAdvanceCache.getAscent(), textPaint);
+			return;
+		}
 		final StaticLayout drawingTextLayout =
-			new StaticLayout(_text, _textPaint, (int) Math.abs(_width), Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+			new StaticLayout(_text, textPaint, (int) Math.abs(_width), Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
 
 		_canvas.save();
 		_canvas.translate(_x, _y);
@@ -78,13 +136,18 @@ final class GMFMTUtils {
 	}
 
 	@Nullable
-	public static String getTruncatedText(final @NonNull TextPaint _textPaint, final float _width, final float _height,
-		final @NonNull String _text) {
+	public static String getTruncatedText(final @NonNull GMFMTGlyphAdvanceCache _glyphAdvanceCache, final float _width,
+		final float _height, final @NonNull String _text) {
 		if (_text.length() < 3) {
 			return _text;
 		}
+		if (measureFittingSingleLine(_glyphAdvanceCache, Math.abs(_width), _text) >= 0) {
+			// The first line is always kept, so text fitting on a single line is never truncated
+			return _text;
+		}
+		final TextPaint textPaint = _glyphAdvanceCache.getTextPaint();
 		final StaticLayout measuringTextLayout =
-			new StaticLayout(_text, _textPaint, (int) Math.abs(_width), Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+			new StaticLayout(_text, textPaint, (int) Math.abs(_width), Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
 
 		final int totalLineCount = measuringTextLayout.getLineCount();
 
@@ -0,0 +1,172 @@
+package com.exlyo.gmfmt;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The markers tracked by the overlay, indexed by the zoom levels at which their floating titles can be displayed, so the markers that
+ * can't be displayed at the current zoom level are never checked.
+ * <p>
+ * Markers displayable at any zoom level are kept in a single list. Other markers are kept in one bucket per integer zoom level their
+ * zoom range intersects: bucket i holds the markers displayable between zoom levels i and i + 1, and the last bucket holds the markers
+ * displayable above its zoom level. The candidates at a zoom level are the unrestricted markers followed by the markers of the zoom
+ * level's bucket, which still need to be checked with isInZoomRange() since buckets are only one zoom level wide.
+ * <p>
+ * The zoom range of each marker is copied when it's added, so changing the zoom range of a MarkerInfo already indexed has no effect
+ * until it's removed and added again, instead of leaving the marker in the buckets of its previous zoom range.
+ * <p>
+ * The position of each marker in its lists is tracked, so a marker is removed in constant time per list by moving the last marker of the
+ * list in its place. A marker added several times is only listed once, and stays indexed until it's removed as many times.
+ */
+final class GMFMTZoomBucketIndex {
+	private static final int ZOOM_BUCKETS_COUNT = 24;
+
+	/* Markers displayable at any zoom level */
+	@NonNull
+	private final List<MarkerInfo> unrestrictedMarkers = new ArrayList<>();
+
+	@NonNull
+	private final List<List<MarkerInfo>> zoomBuckets = new ArrayList<>();
+
+	@NonNull
+	private final Map<MarkerInfo, IndexedMarker> indexedMarkers = new HashMap<>();
+
+	GMFMTZoomBucketIndex() {
+		for (int i = 0; i < ZOOM_BUCKETS_COUNT; i++) {
+			zoomBuckets.add(new ArrayList<MarkerInfo>());
+		}
+	}
+
+	private static int getZoomBucket(final float _zoom) {
+		return (int) Math.max(0F, Math.min(ZOOM_BUCKETS_COUNT - 1, (float) Math.floor(_zoom)));
+	}
+
+	public void add(@NonNull final MarkerInfo _markerInfo) {
+		final IndexedMarker existingIndexedMarker = indexedMarkers.get(_markerInfo);
+		if (existingIndexedMarker != null) {
+			existingIndexedMarker.addedCount++;
+			return;
+		}
+		final IndexedMarker indexedMarker = new IndexedMarker(_markerInfo.getMinZoom(), _markerInfo.getMaxZoom());
+		indexedMarkers.put(_markerInfo, indexedMarker);
+		if (indexedMarker.isUnrestricted()) {
+			indexedMarker.positions[0] = unrestrictedMarkers.size();
+			unrestrictedMarkers.add(_markerInfo);
+			return;
+		}
+		for (int i = indexedMarker.firstBucket; i <= indexedMarker.lastBucket; i++) {
+			final List<MarkerInfo> bucket = zoomBuckets.get(i);
+			indexedMarker.positions[i - indexedMarker.firstBucket] = bucket.size();
+			bucket.add(_markerInfo);
+		}
+	}
+
+	/**
+	 * Removes a marker, moving the last marker of each of its lists in its place. If the marker had been checked for display and the
+	 * marker moved in its place had not, the latter is only checked in the next pass over the candidates.
+	 *
+	 * @param _zoom: the zoom level of the candidates indexes to return
+	 * @return the index the marker had among the candidates at the zoom level, or -1 if it wasn't one of them or is still indexed
+	 */
+	public int remove(@NonNull final MarkerInfo _markerInfo, final float _zoom) {
+		final IndexedMarker indexedMarker = indexedMarkers.get(_markerInfo);
+		if (indexedMarker == null) {
+			return -1;
+		}
+		indexedMarker.addedCount--;
+		if (indexedMarker.addedCount > 0) {
+			return -1;
+		}
+		indexedMarkers.remove(_markerInfo);
+		if (indexedMarker.isUnrestricted()) {
+			final int index = indexedMarker.positions[0];
+			removeAt(unrestrictedMarkers, index, -1);
+			return index;
+		}
+		final int currentBucket = getZoomBucket(_zoom);
+		int res = -1;
+		for (int i = indexedMarker.firstBucket; i <= indexedMarker.lastBucket; i++) {
+			final int index = indexedMarker.positions[i - indexedMarker.firstBucket];
+			removeAt(zoomBuckets.get(i), index, i);
+			if (i == currentBucket) {
+				res = unrestrictedMarkers.size() + index;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Removes the marker at _index from the list, moving the last marker of the list in its place.
+	 *
+	 * @param _bucket: the zoom bucket of the list, or -1 for unrestrictedMarkers
+	 */
+	private void removeAt(@NonNull final List<MarkerInfo> _list, final int _index, final int _bucket) {
+		final MarkerInfo lastMarker = _list.remove(_list.size() - 1);
+		if (_index == _list.size()) {
+			return;
+		}
+		_list.set(_index, lastMarker);
+		final IndexedMarker lastIndexedMarker = indexedMarkers.get(lastMarker);
+		lastIndexedMarker.positions[_bucket < 0 ? 0 : _bucket - lastIndexedMarker.firstBucket] = _index;
+	}
+
+	public void clear() {
+		unrestrictedMarkers.clear();
+		for (final List<MarkerInfo> bucket : zoomBuckets) {
+			bucket.clear();
+		}
+		indexedMarkers.clear();
+	}
+
+	/**
+	 * @return true if the marker is indexed and the zoom level is within the zoom range it had when it was added
+	 */
+	public boolean isInZoomRange(@NonNull final MarkerInfo _markerInfo, final float _zoom) {
+		final IndexedMarker indexedMarker = indexedMarkers.get(_markerInfo);
+		return indexedMarker != null && _zoom >= indexedMarker.minZoom && _zoom <= indexedMarker.maxZoom;
+	}
+
+	/**
+	 * @return the number of markers that might be displayable at the zoom level
+	 */
+	public int getCandidatesCount(final float _zoom) {
+		return unrestrictedMarkers.size() + zoomBuckets.get(getZoomBucket(_zoom)).size();
+	}
+
+	@NonNull
+	public MarkerInfo getCandidate(final float _zoom, final int _index) {
+		final int unrestrictedMarkersCount = unrestrictedMarkers.size();
+		if (_index < unrestrictedMarkersCount) {
+			return unrestrictedMarkers.get(_index);
+		}
+		return zoomBuckets.get(getZoomBucket(_zoom)).get(_index - unrestrictedMarkersCount);
+	}
+
+	private static final class IndexedMarker {
+		/* Zoom range of the marker when it was added, and the matching buckets */
+		private final float minZoom;
+		private final float maxZoom;
+		private final int firstBucket;
+		private final int lastBucket;
+		/* Position of the marker in unrestrictedMarkers, or in each of its buckets from firstBucket to lastBucket */
+		@NonNull
+		private final int[] positions;
+		private int addedCount = 1;
+
+		private IndexedMarker(final float _minZoom, final float _maxZoom) {
+			minZoom = _minZoom;
+			maxZoom = _maxZoom;
+			firstBucket = getZoomBucket(_minZoom);
+			lastBucket = getZoomBucket(_maxZoom);
+			positions = new int[isUnrestricted() ? 1 : lastBucket - firstBucket + 1];
+		}
+
+		private boolean isUnrestricted() {
+			return firstBucket == 0 && lastBucket == ZOOM_BUCKETS_COUNT - 1;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package com.exlyo.gmfmt;
 
+import android.graphics.RectF;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
@@ -17,24 +18,38 @@ public class MarkerInfo {
 	private LatLng coordinates;
 	@NonNull
 	private String title;
-	private int color;
+	@NonNull
+	private MarkerStyle style;
 	private boolean visible;
 	private float zIndex;
-	private boolean boldText;
+	private float minZoom = 0F;
+	private float maxZoom = Float.MAX_VALUE;
+	/* Area taken by the marker icon relative to the marker location, in DIP, or null if the icon doesn't keep floating titles away */
+	@Nullable
+	private RectF iconFootprintDIP;
 
 	public MarkerInfo(@NonNull final LatLng _coordinates, @NonNull final String _title, final int _color) {
-		this(_coordinates, _title, _color, true);
+		this(_coordinates, _title, MarkerStyle.obtain(_color, false), true);
+	}
+
+	public MarkerInfo(@NonNull final LatLng _coordinates, @NonNull final String _title, @NonNull final MarkerStyle _style) {
+		this(_coordinates, _title, _style, true);
 	}
 
 	public MarkerInfo(@NonNull final Marker _marker, final int _color) {
-		this(_marker.getPosition(), _marker.getTitle(), _color, _marker.isVisible());
+		this(_marker, MarkerStyle.obtain(_color, false));
+	}
+
+	public MarkerInfo(@NonNull final Marker _marker, @NonNull final MarkerStyle _style) {
+		this(_marker.getPosition(), _marker.getTitle(), _style, _marker.isVisible());
 		marker = _marker;
 	}
 
-	private MarkerInfo(@NonNull final LatLng _coordinates, @NonNull final String _title, final int _color, final boolean _visible) {
+	private MarkerInfo(@NonNull final LatLng _coordinates, @NonNull final String _title, @NonNull final MarkerStyle _style,
+		final boolean _visible) {
 		coordinates = _coordinates;
 		title = _title;
-		color = _color;
+		style = _style;
 		visible = _visible;
 	}
 
@@ -66,8 +81,78 @@ public class MarkerInfo {
 		return this;
 	}
 
+	/**
+	 * Sets the minimum camera zoom level at which the marker's floating title can be displayed. Below that zoom level, the marker is not
+	 * checked at all for display, which makes placement faster when many markers are only meant to be seen zoomed in. The default value
+	 * is 0, so titles can be displayed at any zoom level.
+	 * <p>
+	 * The zoom range is read when the marker is added to a FloatingMarkerTitlesOverlay: changing the zoom range of a marker already
+	 * tracked has no effect until it's added again, for example with the same ID.
+	 *
+	 * @param _minZoom: the minimum zoom level, included
+	 */
+	public MarkerInfo setMinZoom(final float _minZoom) {
+		minZoom = _minZoom;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum camera zoom level at which the marker's floating title can be displayed. See setMinZoom().
+	 *
+	 * @param _maxZoom: the maximum zoom level, included
+	 */
+	public MarkerInfo setMaxZoom(final float _maxZoom) {
+		maxZoom = _maxZoom;
+		return this;
+	}
+
+	/**
+	 * Sets the area taken by the marker's icon on the map, so the floating titles of other markers are not displayed over it. The area
+	 * follows the marker, and is described like a Marker icon: its size, and the point of the icon placed at the marker location, as a
+	 * fraction of the icon size. For example, the default Google Maps pin is about 27x43 DIP, anchored at (0.5, 1). By default, markers
+	 * have no icon footprint.
+	 * <p>
+	 * The icon footprints are placed on the screen again every frame, so only the markers whose icon should stay visible need one. Like
+	 * the floating title, the icon footprint is only used when the marker is visible and within its zoom range (see setMinZoom()), and
+	 * the icons far from the visible area of the map are skipped without being placed on the screen.
+	 * Changing the icon footprint of a marker already tracked by a FloatingMarkerTitlesOverlay only takes effect once it's added again.
+	 *
+	 * @param _widthDIP:  width of the icon
+	 * @param _heightDIP: height of the icon
+	 * @param _anchorU:   horizontal position of the marker location in the icon, from 0 (left) to 1 (right)
+	 * @param _anchorV:   vertical position of the marker location in the icon, from 0 (top) to 1 (bottom)
+	 */
+	public MarkerInfo setIconFootprintDIP(final float _widthDIP, final float _heightDIP, final float _anchorU, final float _anchorV) {
+		iconFootprintDIP = new RectF(//
+			-_anchorU * _widthDIP,//
+			-_anchorV * _heightDIP,//
+			(1F - _anchorU) * _widthDIP,//
+			(1F - _anchorV) * _heightDIP//
+		);
+		return this;
+	}
+
+	/**
+	 * Removes the icon footprint set with setIconFootprintDIP().
+	 */
+	public MarkerInfo clearIconFootprint() {
+		iconFootprintDIP = null;
+		return this;
+	}
+
 	public MarkerInfo setBoldText(final boolean _boldText) {
-		boldText = _boldText;
+		if (style.isBoldText() != _boldText) {
+			style = MarkerStyle.obtain(style.getColor(), _boldText);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the style of the marker's floating title, replacing the values passed to the constructor and setBoldText(). Markers with the
+	 * same style values are drawn together, and passing the same instance to all of them avoids allocating one style per marker.
+	 */
+	public MarkerInfo setStyle(@NonNull final MarkerStyle _style) {
+		style = _style;
 		return this;
 	}
 
@@ -104,7 +189,12 @@ public class MarkerInfo {
 	}
 
 	public int getColor() {
-		return color;
+		return style.getColor();
+	}
+
+	@NonNull
+	public MarkerStyle getStyle() {
+		return style;
 	}
 
 	public boolean isVisible() {
@@ -125,7 +215,34 @@ public class MarkerInfo {
 		}
 	}
 
+	public float getMinZoom() {
+		return minZoom;
+	}
+
+	public float getMaxZoom() {
+		return maxZoom;
+	}
+
+	/**
+	 * @return true if the information is read from a Marker, which can only be done on the main thread
+	 */
+	boolean hasMarker() {
+		return marker != null;
+	}
+
+	/**
+	 * @return the area taken by the marker icon relative to the marker location, in DIP, or null if it has no icon footprint
+	 */
+	@Nullable
+	RectF getIconFootprintDIP() {
+		return iconFootprintDIP;
+	}
+
+	public boolean isInZoomRange(final float _zoom) {
+		return _zoom >= minZoom && _zoom <= maxZoom;
+	}
+
 	public boolean isBoldText() {
-		return boldText;
+		return style.isBoldText();
 	}
 }
@@ -0,0 +1,96 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.Color;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Visual style of a marker's floating title: its text color and whether it's written in bold, along with the values derived from them
+ * to draw the title, like the outline color.
+ * <p>
+ * Styles are compared by value, so the floating titles are drawn grouped by style whatever the instances. No style is kept by the
+ * library: to avoid allocating one style per marker, obtain the style once and pass the same instance to all the markers using it.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class MarkerStyle {
+	@ColorInt
+	private final int color;
+	private final boolean boldText;
+	@ColorInt
+	private final int outlineColor;
+	/* Ratio applied to the title alpha for the outline alpha, the outline is more transparent than the text */
+	private final float outlineAlphaRatio;
+
+	private MarkerStyle(@ColorInt final int _color, final boolean _boldText) {
+		color = _color;
+		boldText = _boldText;
+		if (GMFMTUtils.isDarkColor(_color)) {
+			outlineColor = Color.WHITE;
+			outlineAlphaRatio = 1F / 1.2F;
+		} else {
+			outlineColor = Color.BLACK;
+			outlineAlphaRatio = 1F / 2F;
+		}
+	}
+
+	/**
+	 * @return a style for the given text color and boldness, meant to be shared by all the markers with these values
+	 */
+	@NonNull
+	public static MarkerStyle obtain(@ColorInt final int _color, final boolean _boldText) {
+		return new MarkerStyle(_color, _boldText);
+	}
+
+	/**
+	 * Orders styles by value, used to sort the floating titles by style when drawing.
+	 */
+	static int compare(@NonNull final MarkerStyle _style1, @NonNull final MarkerStyle _style2) {
+		if (_style1.boldText != _style2.boldText) {
+			return _style1.boldText ? 1 : -1;
+		}
+		if (_style1.color != _style2.color) {
+			return _style1.color < _style2.color ? -1 : 1;
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean equals(@Nullable final Object _o) {
+		if (this == _o) {
+			return true;
+		}
+		if (!(_o instanceof MarkerStyle)) {
+			return false;
+		}
+		final MarkerStyle other = (MarkerStyle) _o;
+		return color == other.color && boldText == other.boldText;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * color + (boldText ? 1 : 0);
+	}
+
+	@ColorInt
+	public int getColor() {
+		return color;
+	}
+
+	public boolean isBoldText() {
+		return boldText;
+	}
+
+	@ColorInt
+	int getOutlineColor() {
+		return outlineColor;
+	}
+
+	/**
+	 * @param _alpha: the alpha of the title text, between 0 and 255
+	 * @return the alpha of the title outline
+	 */
+	int getOutlineAlpha(final int _alpha) {
+		return (int) (_alpha * outlineAlphaRatio);
+	}
+}
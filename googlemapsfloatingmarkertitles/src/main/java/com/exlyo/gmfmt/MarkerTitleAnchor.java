@@ -0,0 +1,53 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+
+/**
+ * Position of a floating title relative to its marker's location on the screen.
+ * <p>
+ * The horizontal and vertical directions are expressed as -1 (left/top), 0 (centered) or 1 (right/bottom). The spacing set with
+ * FloatingMarkerTitlesOverlay.setTextPaddingToMarkerDIP() is applied on each axis where the title is not centered.
+ */
+public enum MarkerTitleAnchor {
+	RIGHT(1, 0),
+	LEFT(-1, 0),
+	TOP(0, -1),
+	BOTTOM(0, 1),
+	TOP_RIGHT(1, -1),
+	TOP_LEFT(-1, -1),
+	BOTTOM_RIGHT(1, 1),
+	BOTTOM_LEFT(-1, 1);
+
+	private final int horizontalDirection;
+	private final int verticalDirection;
+
+	MarkerTitleAnchor(final int _horizontalDirection, final int _verticalDirection) {
+		horizontalDirection = _horizontalDirection;
+		verticalDirection = _verticalDirection;
+	}
+
+	/**
+	 * Sets _res to the area a title of the given size takes on the screen when placed with this anchor around the (_x, _y) location.
+	 */
+	void computeRect(@NonNull final RectF _res, final float _x, final float _y, final float _width, final float _height,
+		final float _padding) {
+		final float left;
+		if (horizontalDirection > 0) {
+			left = _x + _padding;
+		} else if (horizontalDirection < 0) {
+			left = _x - _padding - _width;
+		} else {
+			left = _x - _width / 2;
+		}
+		final float top;
+		if (verticalDirection > 0) {
+			top = _y + _padding;
+		} else if (verticalDirection < 0) {
+			top = _y - _padding - _height;
+		} else {
+			top = _y - _height / 2;
+		}
+		_res.set(left, top, left + _width, top + _height);
+	}
+}
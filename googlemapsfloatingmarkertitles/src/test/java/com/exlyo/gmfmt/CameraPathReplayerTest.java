@@ -0,0 +1,118 @@
+package com.exlyo.gmfmt;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Example of performance regression test: replays a camera path panning over a grid of markers, and checks the replay against a
+ * baseline. An app would replay a recording saved from a real session instead of building one.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CameraPathReplayerTest {
+	private static final int VIEW_WIDTH = 1080;
+	private static final int VIEW_HEIGHT = 1920;
+	private static final int FRAMES_COUNT = 120;
+	private static final long FRAME_INTERVAL = 16;
+	private static final int CHECKED_MARKERS_PER_FRAME = 20;
+	/* Time taken to draw each floating title when replaying slowly, to make the frames much longer than the time budget */
+	private static final long SLOW_DRAW_TEXT_MILLIS = 1;
+
+	@Test
+	public void replayStaysWithinBaseline() throws IOException {
+		final CameraPathReplayReport report = replay(saveAndRead(createPanningRecording()));
+		assertEquals(FRAMES_COUNT, report.getFramesCount());
+		report.assertWithinBaseline(new CameraPathReplayReport.Baseline()//
+			.setMaxFrameTime(95F, 16000000L)//
+			.setMaxAverageChurn(5F)//
+			.setMinAverageDisplayedTitlesCount(10F)//
+		);
+	}
+
+	@Test
+	public void replayDoesntDependOnReplaySpeed() throws IOException {
+		final CameraPathRecording recording = saveAndRead(createPanningRecording());
+		final CameraPathReplayReport report1 = replay(recording);
+		// Replaying with a tiny time budget and a slow canvas, the recorded number of checked markers should still be used for every frame
+		final FloatingMarkerTitlesOverlay slowOverlay = createOverlay();
+		slowOverlay.setNewMarkersCheckTimeBudgetMillis(0.001F);
+		final Canvas slowCanvas = new Canvas(Bitmap.createBitmap(VIEW_WIDTH, VIEW_HEIGHT, Bitmap.Config.ARGB_8888)) {
+			@Override
+			public void drawText(@NonNull final String _text, final float _x, final float _y, @NonNull final Paint _paint) {
+				try {
+					Thread.sleep(SLOW_DRAW_TEXT_MILLIS);
+				} catch (final InterruptedException _e) {
+					Thread.currentThread().interrupt();
+				}
+				super.drawText(_text, _x, _y, _paint);
+			}
+		};
+		final CameraPathReplayReport report2 = new CameraPathReplayer(slowOverlay, recording).replay(slowCanvas);
+		assertEquals(report1.getFramesCount(), report2.getFramesCount());
+		for (int i = 0; i < FRAMES_COUNT; i++) {
+			assertEquals(report1.getFrameDisplayedTitlesCount(i), report2.getFrameDisplayedTitlesCount(i));
+			assertEquals(report1.getFrameChurn(i), report2.getFrameChurn(i));
+		}
+	}
+
+	@NonNull
+	private static CameraPathRecording createPanningRecording() {
+		final CameraPathRecording res = new CameraPathRecording(2F);
+		for (int i = 0; i < FRAMES_COUNT; i++) {
+			res.addFrame(//
+				1000000L + i * FRAME_INTERVAL,//
+				new CameraPosition(new LatLng(48.85, 2.30 + i * 0.0002), 14F, 0F, 0F),//
+				VIEW_WIDTH,//
+				VIEW_HEIGHT,//
+				CHECKED_MARKERS_PER_FRAME//
+			);
+		}
+		return res;
+	}
+
+	@NonNull
+	private static CameraPathRecording saveAndRead(@NonNull final CameraPathRecording _recording) throws IOException {
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		_recording.writeTo(outputStream);
+		return CameraPathRecording.readFrom(new ByteArrayInputStream(outputStream.toByteArray()));
+	}
+
+	@NonNull
+	private static CameraPathReplayReport replay(@NonNull final CameraPathRecording _recording) {
+		final Canvas canvas = new Canvas(Bitmap.createBitmap(VIEW_WIDTH, VIEW_HEIGHT, Bitmap.Config.ARGB_8888));
+		return new CameraPathReplayer(createOverlay(), _recording).replay(canvas);
+	}
+
+	@NonNull
+	private static FloatingMarkerTitlesOverlay createOverlay() {
+		final FloatingMarkerTitlesOverlay overlay = new FloatingMarkerTitlesOverlay(RuntimeEnvironment.application);
+		overlay.setMinTitleDisplayTimeMillis(500);
+		for (int i = 0; i < 40; i++) {
+			for (int j = 0; j < 40; j++) {
+				overlay.addMarker(//
+					i * 40 + j,//
+					new MarkerInfo(new LatLng(48.83 + i * 0.001, 2.28 + j * 0.002), "Marker " + i + "-" + j, Color.BLACK)//
+				);
+			}
+		}
+		return overlay;
+	}
+}